@@ -0,0 +1,75 @@
+package bitap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.SyntheticCorpus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Bitap engines on patterns of each length
+ * WU_MANBER runs BitapLong below 64 characters and BitapExtended from 64, MYERS runs BitapMyers on any length
+ * The haystack doesn't contain the needle, so the whole haystack is scanned
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitapBenchmark {
+    @Param({"WU_MANBER", "MYERS"})
+    public Bitap.Engine engine;
+
+    @Param({"16", "32", "63", "64", "128", "255"})
+    public int patternLength;
+
+    // lev = patternLength * errorPercent / 100
+    @Param({"0", "10", "20"})
+    public int errorPercent;
+
+    @Param({"500", "5000"})
+    public int haystackLength;
+
+    @Param({"ascii", "vietnamese"})
+    public String language;
+
+    private String haystack;
+    private String needle;
+    private int lev;
+    private BitapPattern pattern;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(42, language.equals("vietnamese"));
+        needle = corpus.text(patternLength);
+        haystack = corpus.reference(haystackLength);
+        lev = patternLength * errorPercent / 100;
+        pattern = BitapPattern.compile(needle, lev, engine);
+    }
+
+    // Compiles the pattern on every call
+    @Benchmark
+    public boolean fuzzyContains() {
+        return Bitap.fuzzyContains(haystack, needle, lev, engine);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return pattern.matches(haystack);
+    }
+
+    @Benchmark
+    public BitapMatch findBest() {
+        return pattern.findBest(haystack);
+    }
+}
@@ -0,0 +1,105 @@
+package inMemory;
+
+import bitap.BitapPattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.SyntheticCorpus;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work of a RefMatcher on a synthetic corpus: finding the titles contained by a raw reference
+ * Each reference cites a few titles of the corpus, with up to length / 10 errors
+ * Both benchmarks report the time per reference
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+    private static final int SAMPLE_SIZE = 64;
+    private static final int BRUTE_FORCE_SAMPLE_SIZE = 4;
+
+    @Param({"1000", "10000"})
+    public int numOfArticles;
+
+    @Param({"ascii", "vietnamese"})
+    public String language;
+
+    @Param({"3000"})
+    public int referenceLength;
+
+    private List<BitapPattern> titlePatterns;
+    private TitleMatcher titleMatcher;
+    private String[] references;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(42, language.equals("vietnamese"));
+        Random random = corpus.getRandom();
+
+        List<String> titles = new ArrayList<>(numOfArticles);
+        titlePatterns = new ArrayList<>(numOfArticles);
+        for (int i = 0; i < numOfArticles; ++i) {
+            String title = corpus.text(10 + random.nextInt(140));
+            titles.add(title);
+            titlePatterns.add(BitapPattern.compile(title, title.length() / 10));
+        }
+        titleMatcher = new TitleMatcher(titlePatterns);
+
+        references = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; ++i) {
+            String[] cited = new String[1 + random.nextInt(8)];
+            for (int j = 0; j < cited.length; ++j) {
+                cited[j] = titles.get(random.nextInt(numOfArticles));
+            }
+            references[i] = corpus.reference(referenceLength, cited);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_SIZE)
+    public int titleMatcher() {
+        int matches = 0;
+        BitSet matched = new BitSet(numOfArticles);
+        for (String reference : references) {
+            matched.clear();
+            titleMatcher.matchAll(reference, matched);
+            matches += matched.cardinality();
+        }
+        return matches;
+    }
+
+    /**
+     * Every compiled title against every reference, as RefMatcher did before the TitleMatcher
+     */
+    @Benchmark
+    @OperationsPerInvocation(BRUTE_FORCE_SAMPLE_SIZE)
+    public int bruteForce() {
+        int matches = 0;
+        for (int i = 0; i < BRUTE_FORCE_SAMPLE_SIZE; ++i) {
+            for (BitapPattern pattern : titlePatterns) {
+                if (pattern.matches(references[i])) {
+                    ++matches;
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,49 @@
+package util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StringUtl.clean and StringUtl.fold on titles and reference sections as stored in the DB
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CleanBenchmark {
+    @Param({"100", "5000"})
+    public int textLength;
+
+    @Param({"ascii", "vietnamese"})
+    public String language;
+
+    private String raw;
+
+    @Setup
+    public void setUp() {
+        raw = new SyntheticCorpus(42, language.equals("vietnamese")).rawText(textLength);
+    }
+
+    @Benchmark
+    public String clean() {
+        return StringUtl.clean(raw);
+    }
+
+    @Benchmark
+    public String fold() {
+        return StringUtl.fold(raw);
+    }
+}
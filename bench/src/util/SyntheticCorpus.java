@@ -0,0 +1,116 @@
+package util;
+
+import java.util.Random;
+
+/**
+ * Reproducible generator of titles and references for the benchmarks
+ * The same seed always gives the same corpus, no DB or network is needed
+ *
+ * Titles and references are generated already cleaned (see StringUtl.clean),
+ * except for rawText, which looks like a reference section as stored in the DB
+ */
+public class SyntheticCorpus {
+    private static final String ASCII_LETTERS = "abcdefghijklmnopqrstuvwxyz";
+    private static final String VIETNAMESE_LETTERS = ASCII_LETTERS + "áàảãạăắằẳẵặâấầẩẫậđéèẻẽẹêếềểễệíìỉĩịóòỏõọôốồổỗộơớờởỡợúùủũụưứừửữựýỳỷỹỵ";
+    private static final String RAW_EXTRAS = "ABCDEFGHIJKLMNOPQRSTUVWXYZĐÁÀÂĂÊÔƠƯ.,;:()[]-\"'\n\t–“”…";
+
+    private final Random random;
+    private final String letters;
+
+    /**
+     * @param seed seed of the generator
+     * @param vietnamese true to use Vietnamese letters, false for ASCII letters only
+     */
+    public SyntheticCorpus(long seed, boolean vietnamese) {
+        this.random = new Random(seed);
+        this.letters = vietnamese ? VIETNAMESE_LETTERS : ASCII_LETTERS;
+    }
+
+    /**
+     * Words of 1 to 8 letters separated by single spaces
+     *
+     * @param length exact length of the text
+     */
+    public String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        int wordLength = 1 + random.nextInt(8);
+        while (text.length() < length) {
+            if (wordLength == 0 && text.length() + 1 < length) {
+                text.append(' ');
+                wordLength = 1 + random.nextInt(8);
+            } else {
+                text.append(letters.charAt(random.nextInt(letters.length())));
+                --wordLength;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Same as text, but some characters are upper case, punctuation or control characters
+     * which StringUtl.clean lower cases or removes
+     */
+    public String rawText(int length) {
+        StringBuilder text = new StringBuilder(text(length));
+        for (int i = 0; i < text.length(); i += 1 + random.nextInt(10)) {
+            text.setCharAt(i, RAW_EXTRAS.charAt(random.nextInt(RAW_EXTRAS.length())));
+        }
+        return "  " + text + "  ";
+    }
+
+    /**
+     * Apply random substitutions, deletions and insertions
+     *
+     * @param str string to be modified
+     * @param errors number of edits
+     */
+    public String mutate(String str, int errors) {
+        StringBuilder mutated = new StringBuilder(str);
+        for (int e = 0; e < errors && mutated.length() > 1; ++e) {
+            int pos = random.nextInt(mutated.length());
+            char letter = letters.charAt(random.nextInt(letters.length()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.setCharAt(pos, letter);
+                    break;
+                case 1:
+                    mutated.deleteCharAt(pos);
+                    break;
+                default:
+                    mutated.insert(pos, letter);
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * A reference section citing the given titles, each with up to length / 10 errors,
+     * between entries made of random authors, titles and journals
+     *
+     * @param length approximate length of the reference section
+     * @param cited titles to cite
+     */
+    public String reference(int length, String... cited) {
+        StringBuilder reference = new StringBuilder(length + 64);
+        int entry = 1;
+        for (String title : cited) {
+            appendEntry(reference, entry++, mutate(title, random.nextInt(title.length() / 10 + 1)));
+        }
+        while (reference.length() < length) {
+            appendEntry(reference, entry++, text(20 + random.nextInt(100)));
+        }
+        return reference.toString();
+    }
+
+    private void appendEntry(StringBuilder reference, int entry, String title) {
+        reference.append('[').append(entry).append("] ")
+                .append(text(10 + random.nextInt(30))).append(", ")
+                .append(title).append(", ")
+                .append(text(10 + random.nextInt(20))).append(", ")
+                .append(1990 + random.nextInt(30)).append(". ");
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+}
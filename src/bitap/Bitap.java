@@ -1,6 +1,7 @@
 package bitap;
 
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -9,6 +10,7 @@ import java.util.Set;
  * This implementation use Wu-Manber modification to the original algorithm
  * Therefore the fuzziness is measured with Levenshtein instead of Hamming
  * i.e. better matching and slower performance
+ * Myers' bit-vector algorithm gives the same results, faster when many differences are allowed, see Engine
  */
 public class Bitap {
 
@@ -16,8 +18,23 @@ public class Bitap {
     // - Printable characters in ASCII
     // - Vietnamese characters in lower case (as inputs are guaranteed to be lower case)
     public static Set<Character> Alphabet;
+
+    // Each character of the Alphabet has a compact code in [0, ALPHABET_SIZE)
+    // The codes index the primitive mask tables of the engines, so no boxing or hashing is done while scanning
+    // Characters outside of the Alphabet all share the code ALPHABET_SIZE
+    public static final int ALPHABET_SIZE;
+
+    // Two-level table from character to code: CODE_PAGES[c >>> 8][c & 0xFF]
+    // Only the pages holding ASCII and Vietnamese characters are allocated
+    private static final byte[][] CODE_PAGES = new byte[256][];
+
+    // The character of each code
+    // ALPHABET_SIZE decodes as a line break, the only character outside of the Alphabet left in cleaned texts
+    // (it separates the entries of the references)
+    private static final char[] LETTERS;
+
     static {
-        Alphabet = new HashSet<>();
+        Alphabet = new LinkedHashSet<>();
 
         for (int i = 32; i < 127; ++i) {
             Alphabet.add((char) i);
@@ -30,6 +47,52 @@ public class Bitap {
         for (char vietnamese : Vietnamese) {
             Alphabet.add(vietnamese);
         }
+
+        ALPHABET_SIZE = Alphabet.size();
+        LETTERS = new char[ALPHABET_SIZE + 1];
+        int code = 0;
+        for (char letter : Alphabet) {
+            byte[] page = CODE_PAGES[letter >>> 8];
+            if (page == null) {
+                page = new byte[256];
+                Arrays.fill(page, (byte) ALPHABET_SIZE);
+                CODE_PAGES[letter >>> 8] = page;
+            }
+            LETTERS[code] = letter;
+            page[letter & 0xFF] = (byte) code++;
+        }
+        LETTERS[ALPHABET_SIZE] = '\n';
+    }
+
+    /**
+     * Get the compact code of a character
+     *
+     * @param c character
+     * @return code in [0, ALPHABET_SIZE) if c is in the Alphabet, ALPHABET_SIZE otherwise
+     */
+    public static int code(char c) {
+        byte[] page = CODE_PAGES[c >>> 8];
+        return page == null ? ALPHABET_SIZE : page[c & 0xFF] & 0xFF;
+    }
+
+    /**
+     * Get the character of a compact code
+     *
+     * @param code code in [0, ALPHABET_SIZE]
+     * @return the character, a line break for ALPHABET_SIZE
+     */
+    public static char letter(int code) {
+        return LETTERS[code];
+    }
+
+    /**
+     * Find the first exact occurrence of the pattern
+     * Only Strings are searched, other texts are left to the fuzzy search
+     *
+     * @return offset of the occurrence, -1 if there is none or the text isn't a String
+     */
+    static int exactIndexOf(CharSequence text, String pattern) {
+        return text instanceof String ? ((String) text).indexOf(pattern) : -1;
     }
 
     /**
@@ -43,14 +106,44 @@ public class Bitap {
      * @param lev the maximum difference measured by Levenshtein
      * @return true if the text contains pattern
      */
-    public static boolean fuzzyContains(String text, String pattern, int lev) {
-        if (pattern.length() < 64) {
-            return BitapLong.fuzzyContains(text, pattern, lev);
-        } else {
-            if (pattern.length() > 255) {
-                pattern = pattern.substring(0, 255);
-            }
-            return BitapExtended.fuzzyContains(text, pattern, lev);
-        }
+    public static boolean fuzzyContains(CharSequence text, String pattern, int lev) {
+        return BitapPattern.compile(pattern, lev).matches(text);
+    }
+
+    /**
+     * Same as fuzzyContains(text, pattern, lev), with the given matching algorithm
+     *
+     * @param text to be searched in
+     * @param pattern to be searched
+     * @param lev the maximum difference measured by Levenshtein
+     * @param engine the algorithm, all give the same result
+     * @return true if the text contains pattern
+     */
+    public static boolean fuzzyContains(CharSequence text, String pattern, int lev, Engine engine) {
+        return BitapPattern.compile(pattern, lev, engine).matches(text);
+    }
+
+    /**
+     * Find the best approximate occurrence of the pattern in the text, see BitapPattern.findBest
+     *
+     * @param text to be searched in
+     * @param pattern to be searched
+     * @param lev the maximum difference measured by Levenshtein
+     * @return the best occurrence, null if the text doesn't contain the pattern
+     */
+    public static BitapMatch findBest(CharSequence text, String pattern, int lev) {
+        return BitapPattern.compile(pattern, lev).findBest(text);
+    }
+
+    /**
+     * Algorithms matching a pattern, see BitapPattern.compile
+     */
+    public enum Engine {
+        // Chosen by the length of the pattern and its maximum difference
+        AUTO,
+        // Wu-Manber, one row of bits per allowed difference: BitapLong, or BitapExtended for 64 characters or more
+        WU_MANBER,
+        // Myers, the cost doesn't depend on the allowed difference: BitapMyers
+        MYERS
     }
 }
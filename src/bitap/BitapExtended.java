@@ -1,44 +1,25 @@
 package bitap;
 
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * Based on the masonmlai's implementation
  * The main drawback of the original implementation (BitapLong) is that the pattern length is limited to 63
- * This implementation use BitSet instead of long to holds the bit mask, therefore eliminate this limitation
- * Pattern's length can be arbitrary, but to limit the processing time, it is set at 255
+ * This implementation holds each bit mask in several longs (words), therefore eliminate this limitation
+ * Pattern's length can be arbitrary, but to limit the processing time, it is set at 255 (see Bitap.fuzzyContains)
  *
- * A note on the DEFAULT_MAX_LENGTH:
+ * A row of a needle of length m takes (m + 1 + 63) / 64 words, i.e. 4 words for 255 characters
+ * Word 0 holds the right-most 64 columns, shifts carry the top bit of a word into the bottom bit of the next one
+ *
+ * A note on the sentinel:
  * The original author includes a '&' character at the end of the strings as a "sentinel value"
- * Therefore, '&' must be excluded from the inputs and the DEFAULT_MAX_LENGTH must be +1 to make room for it
+ * As in BitapLong, the rows are initialized to their state after the sentinel instead
  */
 
 class BitapExtended {
-    private static final int DEFAULT_MAX_LENGTH = 255 + 1;
-
-    private static final BitSet ONE = getOne();
-    private static final BitSet ZERO = getZero();
-
-    private static BitSet getNegatedZero() {
-        BitSet negated_zero = new BitSet(DEFAULT_MAX_LENGTH);
-        negated_zero.set(0, DEFAULT_MAX_LENGTH);
-        return negated_zero;
-    }
-
-    private static BitSet getNegatedOne() {
-        BitSet negated_one = new BitSet(DEFAULT_MAX_LENGTH);
-        negated_one.set(0, DEFAULT_MAX_LENGTH - 1);
-        return negated_one;
-    }
-
-    private static BitSet getOne() {
-        BitSet one = new BitSet(DEFAULT_MAX_LENGTH);
-        one.set(DEFAULT_MAX_LENGTH - 1);
-        return one;
-    }
 
-    private static BitSet getZero() {
-        return new BitSet(DEFAULT_MAX_LENGTH);
+    private static int numOfWords(String needle) {
+        return (needle.length() + 1 + 63) >>> 6;
     }
 
     /**
@@ -55,22 +36,25 @@ class BitapExtended {
      *  s : 1 1 0 0 1 0 0 1 1 1 1 0
      *  p : 1 1 1 1 1 1 1 1 0 0 1 0
      *
+     * The masks are flattened into a single array: the words of the mask of
+     * the character c start at Bitap.code(c) * numOfWords(needle).
      */
-    private static Map<Character, BitSet> generateAlphabetMasks(String needle) {
-        Map<Character, BitSet> masks = new HashMap<>();
+    static long[] generateAlphabetMasks(String needle) {
+        int words = numOfWords(needle);
+        long[] masks = new long[(Bitap.ALPHABET_SIZE + 1) * words];
+        Arrays.fill(masks, ~0L);
         int len = needle.length() - 1;
 
-        for (Character letter : Bitap.Alphabet) {
-            BitSet mask = getNegatedZero();
-            for (int pos = 0; pos < needle.length(); pos++) {
-                if (letter.equals(needle.charAt(len - pos))) {
-//                    mask &= ~(1L << pos);
-                    BitSet temp = shiftLeft(ONE, pos);
-                    temp.flip(0, DEFAULT_MAX_LENGTH);
-                    mask.and(temp);
-                }
+        for (int pos = 0; pos < needle.length(); pos++) {
+            int code = Bitap.code(needle.charAt(len - pos));
+            if (code != Bitap.ALPHABET_SIZE) {
+                // The mask is shifted by 1 to leave the right-most zero
+                masks[code * words + ((pos + 1) >>> 6)] &= ~(1L << (pos + 1));
             }
-            masks.put(letter, shiftLeft(mask, 1));
+        }
+
+        for (int code = 0; code <= Bitap.ALPHABET_SIZE; ++code) {
+            masks[code * words] &= ~1L;
         }
 
         return masks;
@@ -81,30 +65,29 @@ class BitapExtended {
      * Commonly thought of as a 2D matrix with dimensions
      * max-Levenshtein-distance by needle-length, with the top-most row
      * corresponding to a Levenshtein distance of 0, and the bottom-most
-     * corresponding to a distance of k. Initialized as all-ones, except
-     * for the right-most column, which is all-zeroes. This array is
-     * updated dynamically as the algorithm progresses through the search
-     * corpus. This implementation is just a 1D array of longs, where each
-     * long, in binary, functions as a row of the matrix. Also, since
-     * longs are 64-bit, the extraneous columns on the left are just all-
-     * ones.
+     * corresponding to a distance of k. Row k is initialized as all-ones,
+     * except for the k + 1 right-most columns, which are all-zeroes.
+     * The rows are flattened into a single array, row k starts at k * words.
      *
      * An example with a max-Levenshtein distance of two:
      *
      *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-     * |<---------------- 64-bits ---------------->|
+     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 0 0
+     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 0 0 0
+     * |<------------- 64 * words bits ----------->|
      *
-     * @param lev - the maximum Levenshtein distance for a substring match
+     * @param lev - the maximum Levenshtein distance for a substring match, smaller than the needle length
+     * @param words - number of words per row
      * @return the starting bit array
      */
-    private static BitSet[] generateBitArray(int lev) {
-        BitSet[] bitArray = new BitSet[lev + 1];
+    private static long[] generateBitArray(int lev, int words) {
+        long[] bitArray = new long[(lev + 1) * words];
+        Arrays.fill(bitArray, ~0L);
 
         for (int k = 0; k <= lev; k++) {
-//            bitArray[k] = ~1;
-            bitArray[k] = getNegatedOne();
+            for (int pos = 0; pos <= k; ++pos) {
+                bitArray[k * words + (pos >>> 6)] &= ~(1L << pos);
+            }
         }
 
         return bitArray;
@@ -121,6 +104,11 @@ class BitapExtended {
 	 * needle, and proceeds to the start of the haystack. The "end position"
 	 * that this implementation finds is really the start position, since
 	 * the string search is being done with all text "flipped".
+	 *
+	 * Same as BitapLong, the scan doesn't allocate: the rows are updated
+	 * in place word by word, from the right-most word to the left-most one,
+	 * and the old words of the previous row are kept in a scratch row.
+	 * The end of an occurrence is found by an anchored forward scan, as in BitapLong.
 	 */
 
     /**
@@ -130,83 +118,171 @@ class BitapExtended {
      * @param lev - the maximum Levenshtein distance for a substring match
      * @return true if the haystack "contains" the needle
      */
-    public static boolean fuzzyContains(String haystack, String needle, int lev) {
-        int position = haystack.indexOf(needle);
-        if (position >= 0) {
+    public static boolean fuzzyContains(CharSequence haystack, String needle, int lev) {
+        return fuzzyContains(haystack, needle, lev, generateAlphabetMasks(needle));
+    }
+
+    private static boolean fuzzyContains(CharSequence haystack, String needle, int lev, long[] alphabetMasks) {
+        if (lev >= needle.length() || Bitap.exactIndexOf(haystack, needle) >= 0) {
             return true;
         }
 
-        position = -1;
-        haystack = haystack + "&";  // sentinel value
+        int words = numOfWords(needle);
+        long[] bitArray = generateBitArray(lev, words);
+        long[] old = new long[words];
 
-        BitSet[] bitArray = generateBitArray(lev);
-        Map<Character, BitSet> alphabetMasks = generateAlphabetMasks(needle);
+        int matchWord = lev * words + (needle.length() >>> 6);
+        long matchBit = 1L << needle.length();
 
         for (int i = haystack.length() - 1; i >= 0; --i) {
-            BitSet[] old = bitArray.clone();
-//            bitArray[0] = (old[0] << 1) | alphabetMasks.get(haystack.charAt(i));
-            BitSet temp = shiftLeft(old[0], 1);
+            step(bitArray, old, lev, words, alphabetMasks, Bitap.code(haystack.charAt(i)) * words, 0);
 
-            if (alphabetMasks.get(haystack.charAt(i)) == null) {
-                System.out.println(haystack.charAt(i));
-            }
-            temp.or(alphabetMasks.get(haystack.charAt(i)));
-            bitArray[0] = temp;
-
-            if (lev > 0) {
-                for (int k = 1; k <= lev; ++k) {
-//                    long ins = old[k - 1];
-                    BitSet ins = old[k - 1];
-
-//                    long sub = ins << 1;
-                    BitSet sub = shiftLeft(ins, 1);
-
-//                    long del = bitArray[k - 1] << 1;
-                    BitSet del = shiftLeft(bitArray[k - 1], 1);
-
-//                    long match = (old[k] << 1) | alphabetMasks.get(haystack.charAt(i));
-                    temp = shiftLeft(old[k], 1);
-                    temp.or(alphabetMasks.get(haystack.charAt(i)));
-                    BitSet match = temp;
-
-//                    bitArray[k] = ins & del & sub & match;
-                    // Note: bitwise operators MODIFY the BitSet
-                    // Therefore ins.or(...) is wrong
-                    sub.and(ins);
-                    sub.and(del);
-                    sub.and(match);
-                    bitArray[k] = sub;
-                }
+            if (0 == (bitArray[matchWord] & matchBit)) {
+                return true;
             }
+        }
+
+        return false;
+    }
+
+    /*
+     * Read a character of the haystack: update rows 0 to lev in place
+     * The right-most column of the first anchoredRows rows is set: in a scan anchored at its start,
+     * row k can't match nothing of the needle once more than k characters are read
+     */
+    private static void step(long[] bitArray, long[] old, int lev, int words, long[] alphabetMasks, int maskStart, int anchoredRows) {
+        // bitArray[0] = (old[0] << 1) | mask
+        long carry = 0;
+        for (int w = 0; w < words; ++w) {
+            long current = bitArray[w];
+            old[w] = current;
+            bitArray[w] = (current << 1) | carry | alphabetMasks[maskStart + w];
+            carry = current >>> 63;
+        }
+        if (anchoredRows > 0) {
+            bitArray[0] |= 1L;
+        }
+
+        for (int k = 1; k <= lev; ++k) {
+            int row = k * words;
+            long insCarry = 0, delCarry = 0, matchCarry = 0;
 
-//            if (0 == (bitArray[lev] & (1 << needle.length()))) {
-//                position = i;
-//            }
-            temp = shiftLeft(ONE, needle.length());
-            temp.or(bitArray[lev]);
-            if (isEqual(temp, ZERO)) {
-                position = i;
+            for (int w = 0; w < words; ++w) {
+                long ins = old[w];
+                long sub = (ins << 1) | insCarry;
+                insCarry = ins >>> 63;
+
+                long previous = bitArray[row - words + w];
+                long del = (previous << 1) | delCarry;
+                delCarry = previous >>> 63;
+
+                long current = bitArray[row + w];
+                long match = (current << 1) | matchCarry | alphabetMasks[maskStart + w];
+                matchCarry = current >>> 63;
+
+                old[w] = current;
+                bitArray[row + w] = ins & del & sub & match;
+            }
+            if (k < anchoredRows) {
+                bitArray[row] |= 1L;
             }
         }
-        
-        return position != -1;
     }
 
-    private static BitSet shiftLeft(BitSet input, int shift) {
-        BitSet shifted = new BitSet(DEFAULT_MAX_LENGTH);
-        int j = 0;
-        for (int i = shift; i < DEFAULT_MAX_LENGTH; ++i) {
-            shifted.set(j++, input.get(i));
+    /**
+     * Find the best match of a needle within a haystack, see BitapPattern.findBest
+     *
+     * @param lev - the maximum Levenshtein distance for a substring match
+     * @return the best match, null if there is none
+     */
+    public static BitapMatch findBest(CharSequence haystack, String needle, int lev) {
+        return findBest(haystack, needle, lev, generateAlphabetMasks(needle));
+    }
+
+    private static BitapMatch findBest(CharSequence haystack, String needle, int lev, long[] alphabetMasks) {
+        int exact = Bitap.exactIndexOf(haystack, needle);
+        if (exact >= 0) {
+            return new BitapMatch(exact, exact + needle.length(), 0);
+        }
+        if (needle.isEmpty()) {
+            return new BitapMatch(0, 0, 0);
+        }
+
+        // Deleting the whole needle is the worst match, the rows stop before it
+        int rows = Math.min(lev, needle.length() - 1);
+        int words = numOfWords(needle);
+        long[] bitArray = generateBitArray(rows, words);
+        long[] old = new long[words];
+
+        int matchWord = needle.length() >>> 6;
+        long matchBit = 1L << needle.length();
+
+        // Scanning backwards, an occurrence as good as the best one is further to the left
+        int start = -1;
+        int distance = rows + 1;
+        for (int i = haystack.length() - 1; i >= 0; --i) {
+            step(bitArray, old, rows, words, alphabetMasks, Bitap.code(haystack.charAt(i)) * words, 0);
+
+            for (int k = 0; k <= distance && k <= rows; ++k) {
+                if (0 == (bitArray[k * words + matchWord] & matchBit)) {
+                    start = i;
+                    distance = k;
+                    break;
+                }
+            }
+        }
+
+        if (start == -1) {
+            return lev >= needle.length() ? new BitapMatch(0, 0, needle.length()) : null;
         }
-        return shifted;
+
+        long[] forwardMasks = generateAlphabetMasks(new StringBuilder(needle).reverse().toString());
+        return new BitapMatch(start, matchEnd(haystack, start, needle, distance, forwardMasks), distance);
     }
 
-    private static boolean isEqual(BitSet a, BitSet b) {
-        for (int i = 0; i < DEFAULT_MAX_LENGTH; ++i) {
-            if (a.get(i) != b.get(i)) {
-                return false;
+    // End of the shortest match starting at start, whose distance is known
+    private static int matchEnd(CharSequence haystack, int start, String needle, int distance, long[] forwardMasks) {
+        int words = numOfWords(needle);
+        long[] bitArray = generateBitArray(distance, words);
+        long[] old = new long[words];
+
+        int matchWord = distance * words + (needle.length() >>> 6);
+        long matchBit = 1L << needle.length();
+
+        for (int i = start; i < haystack.length(); ++i) {
+            int read = i - start + 1;
+            step(bitArray, old, distance, words, forwardMasks, Bitap.code(haystack.charAt(i)) * words, Math.min(read, distance + 1));
+
+            if (0 == (bitArray[matchWord] & matchBit)) {
+                return i + 1;
             }
         }
-        return true;
+
+        return haystack.length();
+    }
+
+    /**
+     * BitapPattern of length 64 to 255, the alphabet masks are generated once in the constructor
+     */
+    static class Pattern extends BitapPattern {
+        private final long[] alphabetMasks;
+
+        Pattern(String pattern, int lev) {
+            super(pattern, lev);
+            this.alphabetMasks = generateAlphabetMasks(pattern);
+        }
+
+        @Override
+        public boolean matches(CharSequence text) {
+            long start = EngineStats.start();
+            boolean matches = fuzzyContains(text, pattern, lev, alphabetMasks);
+            EngineStats.stop(EngineStats.Kind.EXTENDED, start);
+            return matches;
+        }
+
+        @Override
+        public BitapMatch findBest(CharSequence text) {
+            return BitapExtended.findBest(text, pattern, lev, alphabetMasks);
+        }
     }
 }
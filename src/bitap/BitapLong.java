@@ -1,12 +1,13 @@
 package bitap;
 
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * Original implementation by masonmlai
  * https://github.com/masonmlai/bitap
  *
  * Edited to support unicode
+ * Fixed the match check, which shifted an int and failed for needles of 31 characters or more
  */
 
 class BitapLong {
@@ -25,19 +26,23 @@ class BitapLong {
      *  s : 1 1 0 0 1 0 0 1 1 1 1 0
      *  p : 1 1 1 1 1 1 1 1 0 0 1 0
      *
+     * The masks are indexed by Bitap.code, the last one (characters outside
+     * of the alphabet) matches nothing.
      */
-    private static Map<Character, Long> generateAlphabetMasks(String needle) {
-        Map<Character, Long> masks = new HashMap<>();
+    static long[] generateAlphabetMasks(String needle) {
+        long[] masks = new long[Bitap.ALPHABET_SIZE + 1];
+        Arrays.fill(masks, ~0L);
         int len = needle.length() - 1;
 
-        for (Character letter : Bitap.Alphabet) {
-            long mask = ~0;
-            for (int pos = 0; pos < needle.length(); pos++) {
-                if (letter.equals(needle.charAt(len - pos))) {
-                    mask &= ~(1L << pos);
-                }
+        for (int pos = 0; pos < needle.length(); pos++) {
+            int code = Bitap.code(needle.charAt(len - pos));
+            if (code != Bitap.ALPHABET_SIZE) {
+                masks[code] &= ~(1L << pos);
             }
-            masks.put(letter, (mask << 1));
+        }
+
+        for (int code = 0; code < masks.length; ++code) {
+            masks[code] <<= 1;
         }
 
         return masks;
@@ -48,30 +53,33 @@ class BitapLong {
      * Commonly thought of as a 2D matrix with dimensions
      * max-Levenshtein-distance by needle-length, with the top-most row
      * corresponding to a Levenshtein distance of 0, and the bottom-most
-     * corresponding to a distance of k. Initialized as all-ones, except
-     * for the right-most column, which is all-zeroes. This array is
-     * updated dynamically as the algorithm progresses through the search
-     * corpus. This implementation is just a 1D array of longs, where each
-     * long, in binary, functions as a row of the matrix. Also, since
-     * longs are 64-bit, the extraneous columns on the left are just all-
-     * ones.
+     * corresponding to a distance of k. This array is updated dynamically
+     * as the algorithm progresses through the search corpus. This
+     * implementation is just a 1D array of longs, where each long, in
+     * binary, functions as a row of the matrix. Also, since longs are
+     * 64-bit, the extraneous columns on the left are just all-ones.
+     *
+     * The original implementation appends a '&' sentinel to the haystack,
+     * which only serves to let row k delete the first k characters of the
+     * needle. Row k is therefore initialized to the state after the sentinel:
+     * all-ones, except for the k + 1 right-most columns, which are all-zeroes.
      *
      * An example with a max-Levenshtein distance of two:
      *
      *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
+     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 0 0
+     *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 0 0 0
      * |<---------------- 64-bits ---------------->|
      *
      *
-     * @param lev - the maximum Levenshtein distance for a substring match
+     * @param lev - the maximum Levenshtein distance for a substring match, smaller than 63
      * @return the starting bit array
      */
     private static long[] generateBitArray(int lev) {
         long[] bitArray = new long[lev + 1];
 
         for (int k = 0; k <= lev; k++) {
-            bitArray[k] = ~1;
+            bitArray[k] = ~0L << (k + 1);
         }
 
         return bitArray;
@@ -88,6 +96,15 @@ class BitapLong {
 	 * needle, and proceeds to the start of the haystack. The "end position"
 	 * that this implementation finds is really the start position, since
 	 * the string search is being done with all text "flipped".
+	 *
+	 * The end of an occurrence is then found by a forward scan anchored at
+	 * its start: the masks of the needle in its original order are the masks
+	 * of the reversed needle, and the right-most column (nothing of the needle
+	 * matched yet) is set in row k once more than k characters are read.
+	 *
+	 * The scan itself doesn't allocate: the masks are a primitive table
+	 * indexed by Bitap.code, and the rows are updated in place, the old
+	 * value of the previous row being carried in a local variable.
 	 */
 
     /**
@@ -97,38 +114,146 @@ class BitapLong {
      * @param lev - the maximum Levenshtein distance for a substring match
      * @return true if the haystack "contains" the needle
      */
-    public static boolean fuzzyContains(String haystack, String needle, int lev) {
-        int position = haystack.indexOf(needle);
-        if (position >= 0) {
+    public static boolean fuzzyContains(CharSequence haystack, String needle, int lev) {
+        return fuzzyContains(haystack, needle, lev, generateAlphabetMasks(needle));
+    }
+
+    private static boolean fuzzyContains(CharSequence haystack, String needle, int lev, long[] alphabetMasks) {
+        if (lev >= needle.length() || Bitap.exactIndexOf(haystack, needle) >= 0) {
             return true;
         }
 
-        position = -1;
-        haystack = haystack + "&";  // sentinel value
-
         long[] bitArray = generateBitArray(lev);
-        Map<Character, Long> alphabetMasks = generateAlphabetMasks(needle);
+        long matchBit = 1L << needle.length();
 
         for (int i = haystack.length() - 1; i >= 0; --i) {
-            long[] old = bitArray.clone();
-            bitArray[0] = (old[0] << 1) | alphabetMasks.get(haystack.charAt(i));
-            if (lev > 0) {
-                for (int k = 1; k <= lev; ++k) {
-                    long ins = old[k - 1];
-                    long sub = ins << 1;
-                    long del = bitArray[k - 1] << 1;
+            step(bitArray, lev, alphabetMasks[Bitap.code(haystack.charAt(i))]);
+
+            if (0 == (bitArray[lev] & matchBit)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Read a character of the haystack: update rows 0 to lev in place
+    private static void step(long[] bitArray, int lev, long mask) {
+        long old = bitArray[0];
+        bitArray[0] = (old << 1) | mask;
+        for (int k = 1; k <= lev; ++k) {
+            long ins = old;
+            long sub = ins << 1;
+            long del = bitArray[k - 1] << 1;
+
+            old = bitArray[k];
+            long match = (old << 1) | mask;
+
+            bitArray[k] = ins & del & sub & match;
+        }
+    }
 
-                    long match = (old[k] << 1) | alphabetMasks.get(haystack.charAt(i));
+    /**
+     * Find the best match of a needle within a haystack, see BitapPattern.findBest
+     *
+     * @param lev - the maximum Levenshtein distance for a substring match
+     * @return the best match, null if there is none
+     */
+    public static BitapMatch findBest(CharSequence haystack, String needle, int lev) {
+        return findBest(haystack, needle, lev, generateAlphabetMasks(needle));
+    }
 
-                    bitArray[k] = ins & del & sub & match;
+    private static BitapMatch findBest(CharSequence haystack, String needle, int lev, long[] alphabetMasks) {
+        int exact = Bitap.exactIndexOf(haystack, needle);
+        if (exact >= 0) {
+            return new BitapMatch(exact, exact + needle.length(), 0);
+        }
+        if (needle.isEmpty()) {
+            return new BitapMatch(0, 0, 0);
+        }
+
+        // Deleting the whole needle is the worst match, the rows stop before it
+        int rows = Math.min(lev, needle.length() - 1);
+        long[] bitArray = generateBitArray(rows);
+        long matchBit = 1L << needle.length();
+
+        // Scanning backwards, an occurrence as good as the best one is further to the left
+        int start = -1;
+        int distance = rows + 1;
+        for (int i = haystack.length() - 1; i >= 0; --i) {
+            step(bitArray, rows, alphabetMasks[Bitap.code(haystack.charAt(i))]);
+
+            for (int k = 0; k <= distance && k <= rows; ++k) {
+                if (0 == (bitArray[k] & matchBit)) {
+                    start = i;
+                    distance = k;
+                    break;
                 }
             }
+        }
+
+        if (start == -1) {
+            return lev >= needle.length() ? new BitapMatch(0, 0, needle.length()) : null;
+        }
+
+        long[] forwardMasks = generateAlphabetMasks(new StringBuilder(needle).reverse().toString());
+        return new BitapMatch(start, matchEnd(haystack, start, needle, distance, forwardMasks), distance);
+    }
+
+    // End of the shortest match starting at start, whose distance is known
+    private static int matchEnd(CharSequence haystack, int start, String needle, int distance, long[] forwardMasks) {
+        long[] bitArray = generateBitArray(distance);
+        long matchBit = 1L << needle.length();
+
+        for (int i = start; i < haystack.length(); ++i) {
+            long mask = forwardMasks[Bitap.code(haystack.charAt(i))];
+
+            // Anchored: nothing of the needle is matched by row k once more than k characters are read
+            int read = i - start + 1;
+
+            long old = bitArray[0];
+            bitArray[0] = (old << 1) | mask | 1L;
+            for (int k = 1; k <= distance; ++k) {
+                long ins = old;
+                long sub = ins << 1;
+                long del = bitArray[k - 1] << 1;
 
-            if (0 == (bitArray[lev] & (1 << needle.length()))) {
-                position = i;
+                old = bitArray[k];
+                long match = (old << 1) | mask;
+
+                bitArray[k] = ins & del & sub & match | (read > k ? 1L : 0L);
+            }
+
+            if (0 == (bitArray[distance] & matchBit)) {
+                return i + 1;
             }
         }
 
-        return position != -1;
+        return haystack.length();
+    }
+
+    /**
+     * BitapPattern of length < 64, the alphabet masks are generated once in the constructor
+     */
+    static class Pattern extends BitapPattern {
+        private final long[] alphabetMasks;
+
+        Pattern(String pattern, int lev) {
+            super(pattern, lev);
+            this.alphabetMasks = generateAlphabetMasks(pattern);
+        }
+
+        @Override
+        public boolean matches(CharSequence text) {
+            long start = EngineStats.start();
+            boolean matches = fuzzyContains(text, pattern, lev, alphabetMasks);
+            EngineStats.stop(EngineStats.Kind.LONG, start);
+            return matches;
+        }
+
+        @Override
+        public BitapMatch findBest(CharSequence text) {
+            return BitapLong.findBest(text, pattern, lev, alphabetMasks);
+        }
     }
 }
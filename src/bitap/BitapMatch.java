@@ -0,0 +1,49 @@
+package bitap;
+
+/**
+ * An approximate occurrence of a pattern in a text, see BitapPattern.findBest
+ */
+public class BitapMatch {
+    private final int start;
+    private final int end;
+    private final int distance;
+
+    BitapMatch(int start, int end, int distance) {
+        this.start = start;
+        this.end = end;
+        this.distance = distance;
+    }
+
+    /**
+     * @return offset of the first character of the occurrence in the text
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return offset following the last character of the occurrence in the text
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Levenshtein distance between the pattern and the occurrence
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return true if this occurrence lies within the other one
+     */
+    public boolean isWithin(BitapMatch other) {
+        return other.start <= start && end <= other.end;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ") distance " + distance;
+    }
+}
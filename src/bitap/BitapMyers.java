@@ -0,0 +1,255 @@
+package bitap;
+
+/**
+ * Myers' bit-vector algorithm for approximate string matching
+ * G. Myers, A fast bit-vector algorithm for approximate string matching based on dynamic programming (1999),
+ * with the blocks of H. Hyyrö for needles longer than 64
+ *
+ * Instead of one row per allowed error as in Wu-Manber (BitapLong, BitapExtended), a column of the edit distance
+ * matrix is held as its vertical differences (+1, 0 or -1) in two bit vectors Pv and Mv, and the distance of the
+ * whole needle is tracked in a counter. The cost per character of the haystack is therefore independent of lev:
+ * a few word operations for each 64 characters of the needle
+ *
+ * As in BitapLong, the haystack is scanned backwards with the needle reversed, so that the position
+ * found is the start of the occurrence. The end is found by a forward scan anchored at the start.
+ */
+
+class BitapMyers {
+
+    private static int numOfWords(String needle) {
+        return (needle.length() + 63) >>> 6;
+    }
+
+    /**
+     * Initialize the match masks, commonly denoted as 'Peq' in the literature.
+     * Unlike the Wu-Manber masks, ones mark the locations where the letter
+     * appears in the reversed needle, there is no extra column.
+     * For example, if the needle were "Mississippi":
+     *
+     *		M i s s i s s i p p i
+     *
+     *  M : 1 0 0 0 0 0 0 0 0 0 0
+     *  i : 0 1 0 0 1 0 0 1 0 0 1
+     *  s : 0 0 1 1 0 1 1 0 0 0 0
+     *  p : 0 0 0 0 0 0 0 0 1 1 0
+     *
+     * The masks are flattened into a single array: the words of the mask of
+     * the character c start at Bitap.code(c) * numOfWords(needle).
+     * Characters outside of the alphabet match nothing.
+     */
+    static long[] generateMatchMasks(String needle) {
+        int words = numOfWords(needle);
+        long[] masks = new long[(Bitap.ALPHABET_SIZE + 1) * words];
+        int len = needle.length() - 1;
+
+        for (int pos = 0; pos < needle.length(); pos++) {
+            int code = Bitap.code(needle.charAt(len - pos));
+            if (code != Bitap.ALPHABET_SIZE) {
+                masks[code * words + (pos >>> 6)] |= 1L << pos;
+            }
+        }
+
+        return masks;
+    }
+
+    /*
+     * Read a character of the haystack: advance the column of each block, from the top of the needle to its end.
+     * hin is the horizontal difference entering the top of the first block: 0 when an occurrence may start anywhere,
+     * +1 when the scan is anchored at its start. Each block passes the difference leaving its bottom to the next one.
+     *
+     * Returns the horizontal difference leaving the bottom of the last block, i.e. the change of the distance.
+     */
+    private static int step(long[] pv, long[] mv, int words, long[] matchMasks, int maskStart, int hin, int lastShift) {
+        for (int w = 0; w < words; ++w) {
+            long eq = matchMasks[maskStart + w];
+            long p = pv[w];
+            long m = mv[w];
+
+            // hinNegative and hinPositive are 1 or 0
+            long hinNegative = hin >>> 31;
+            long hinPositive = -hin >>> 31;
+
+            long xv = eq | m;
+            eq |= hinNegative;
+            long xh = (((eq & p) + p) ^ p) | eq;
+            long ph = m | ~(xh | p);
+            long mh = p & xh;
+
+            int bottom = w == words - 1 ? lastShift : 63;
+            hin = (int) ((ph >>> bottom) & 1L) - (int) ((mh >>> bottom) & 1L);
+
+            ph = (ph << 1) | hinPositive;
+            mh = (mh << 1) | hinNegative;
+            pv[w] = mh | ~(xv | ph);
+            mv[w] = ph & xv;
+        }
+
+        return hin;
+    }
+
+    /**
+     * Myers' algorithm. Same result as BitapLong.fuzzyContains.
+     *
+     * @param lev - the maximum Levenshtein distance for a substring match
+     * @return true if the haystack "contains" the needle
+     */
+    public static boolean fuzzyContains(CharSequence haystack, String needle, int lev) {
+        return fuzzyContains(haystack, needle, lev, generateMatchMasks(needle));
+    }
+
+    private static boolean fuzzyContains(CharSequence haystack, String needle, int lev, long[] matchMasks) {
+        if (lev >= needle.length() || Bitap.exactIndexOf(haystack, needle) >= 0) {
+            return true;
+        }
+
+        int words = numOfWords(needle);
+        if (words == 1) {
+            return fuzzyContainsShort(haystack, needle, lev, matchMasks);
+        }
+
+        long[] pv = initialPv(words);
+        long[] mv = new long[words];
+        int lastShift = (needle.length() - 1) & 63;
+
+        int distance = needle.length();
+        for (int i = haystack.length() - 1; i >= 0; --i) {
+            distance += step(pv, mv, words, matchMasks, Bitap.code(haystack.charAt(i)) * words, 0, lastShift);
+
+            if (distance <= lev) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Same as fuzzyContains for needles of at most 64 characters: the column fits in a single block
+    private static boolean fuzzyContainsShort(CharSequence haystack, String needle, int lev, long[] matchMasks) {
+        long pv = ~0L;
+        long mv = 0;
+        int lastShift = needle.length() - 1;
+
+        int distance = needle.length();
+        for (int i = haystack.length() - 1; i >= 0; --i) {
+            long eq = matchMasks[Bitap.code(haystack.charAt(i))];
+
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+
+            distance += (int) ((ph >>> lastShift) & 1L) - (int) ((mh >>> lastShift) & 1L);
+            if (distance <= lev) {
+                return true;
+            }
+
+            ph <<= 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+
+        return false;
+    }
+
+    // All vertical differences are +1: the distance to the first i characters of the needle is i
+    private static long[] initialPv(int words) {
+        long[] pv = new long[words];
+        for (int w = 0; w < words; ++w) {
+            pv[w] = ~0L;
+        }
+        return pv;
+    }
+
+    /**
+     * Find the best match of a needle within a haystack, see BitapPattern.findBest
+     *
+     * @param lev - the maximum Levenshtein distance for a substring match
+     * @return the best match, null if there is none
+     */
+    public static BitapMatch findBest(CharSequence haystack, String needle, int lev) {
+        return findBest(haystack, needle, lev, generateMatchMasks(needle));
+    }
+
+    private static BitapMatch findBest(CharSequence haystack, String needle, int lev, long[] matchMasks) {
+        int exact = Bitap.exactIndexOf(haystack, needle);
+        if (exact >= 0) {
+            return new BitapMatch(exact, exact + needle.length(), 0);
+        }
+
+        int words = numOfWords(needle);
+        long[] pv = initialPv(words);
+        long[] mv = new long[words];
+        int lastShift = (needle.length() - 1) & 63;
+
+        // Scanning backwards, an occurrence as good as the best one is further to the left
+        int start = -1;
+        int best = needle.length() + 1;
+        int distance = needle.length();
+        for (int i = haystack.length() - 1; i >= 0; --i) {
+            distance += step(pv, mv, words, matchMasks, Bitap.code(haystack.charAt(i)) * words, 0, lastShift);
+
+            if (distance <= best) {
+                start = i;
+                best = distance;
+            }
+        }
+
+        if (start == -1 || best > lev) {
+            // Deleting the whole needle is the worst match
+            return lev >= needle.length() ? new BitapMatch(0, 0, needle.length()) : null;
+        }
+
+        long[] forwardMasks = generateMatchMasks(new StringBuilder(needle).reverse().toString());
+        return new BitapMatch(start, matchEnd(haystack, start, needle, best, forwardMasks), best);
+    }
+
+    // End of the shortest match starting at start, whose distance is known
+    private static int matchEnd(CharSequence haystack, int start, String needle, int distance, long[] forwardMasks) {
+        if (distance >= needle.length()) {
+            return start;
+        }
+
+        int words = numOfWords(needle);
+        long[] pv = initialPv(words);
+        long[] mv = new long[words];
+        int lastShift = (needle.length() - 1) & 63;
+
+        // Anchored: the distance of the empty needle grows by one with each character read
+        int current = needle.length();
+        for (int i = start; i < haystack.length(); ++i) {
+            current += step(pv, mv, words, forwardMasks, Bitap.code(haystack.charAt(i)) * words, 1, lastShift);
+
+            if (current == distance) {
+                return i + 1;
+            }
+        }
+
+        return haystack.length();
+    }
+
+    /**
+     * BitapPattern matched with Myers' algorithm, the match masks are generated once in the constructor
+     */
+    static class Pattern extends BitapPattern {
+        private final long[] matchMasks;
+
+        Pattern(String pattern, int lev) {
+            super(pattern, lev);
+            this.matchMasks = generateMatchMasks(pattern);
+        }
+
+        @Override
+        public boolean matches(CharSequence text) {
+            long start = EngineStats.start();
+            boolean matches = fuzzyContains(text, pattern, lev, matchMasks);
+            EngineStats.stop(EngineStats.Kind.MYERS, start);
+            return matches;
+        }
+
+        @Override
+        public BitapMatch findBest(CharSequence text) {
+            return BitapMyers.findBest(text, pattern, lev, matchMasks);
+        }
+    }
+}
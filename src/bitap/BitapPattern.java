@@ -0,0 +1,92 @@
+package bitap;
+
+/**
+ * A pattern compiled for fuzzy matching
+ * The alphabet masks are generated once and reused for every text it is matched against,
+ * therefore searching the same pattern in many texts is much cheaper than Bitap.fuzzyContains
+ *
+ * Patterns allowing no or few differences are handled by Wu-Manber: BitapLong if shorter than 64, BitapExtended otherwise
+ * The others by Myers' algorithm, BitapMyers, whose cost doesn't grow with the allowed differences
+ * Patterns longer than 255 are truncated, see Bitap.fuzzyContains
+ */
+public abstract class BitapPattern {
+    // From this many allowed differences, Myers is faster than Wu-Manber, for patterns of at most 64 characters
+    // and for longer ones. A single row of Wu-Manber is cheaper than a Myers step, two rows of several words aren't
+    private static final int MYERS_MIN_LEV = 1;
+    private static final int MYERS_MIN_LEV_EXTENDED = 2;
+
+    final String pattern;
+    final int lev;
+
+    BitapPattern(String pattern, int lev) {
+        this.pattern = pattern;
+        this.lev = lev;
+    }
+
+    /**
+     * Compile the pattern, the engine is chosen by its length and lev
+     *
+     * @param pattern to be searched
+     * @param lev the maximum difference measured by Levenshtein
+     * @return the compiled pattern
+     */
+    public static BitapPattern compile(String pattern, int lev) {
+        return compile(pattern, lev, Bitap.Engine.AUTO);
+    }
+
+    /**
+     * Compile the pattern
+     *
+     * @param pattern to be searched
+     * @param lev the maximum difference measured by Levenshtein
+     * @param engine the algorithm matching the pattern, all give the same results
+     * @return the compiled pattern
+     */
+    public static BitapPattern compile(String pattern, int lev, Bitap.Engine engine) {
+        if (pattern.length() > 255) {
+            pattern = pattern.substring(0, 255);
+        }
+
+        if (engine == Bitap.Engine.AUTO) {
+            int minLev = pattern.length() <= 64 ? MYERS_MIN_LEV : MYERS_MIN_LEV_EXTENDED;
+            engine = lev >= minLev ? Bitap.Engine.MYERS : Bitap.Engine.WU_MANBER;
+        }
+
+        if (engine == Bitap.Engine.MYERS) {
+            return new BitapMyers.Pattern(pattern, lev);
+        } else if (pattern.length() < 64) {
+            return new BitapLong.Pattern(pattern, lev);
+        } else {
+            return new BitapExtended.Pattern(pattern, lev);
+        }
+    }
+
+    /**
+     * Check if the text "contains" the pattern
+     * Same as Bitap.fuzzyContains(text, pattern, lev)
+     * The scan stops at the first occurrence found
+     *
+     * @param text to be searched in
+     * @return true if the text contains pattern
+     */
+    public abstract boolean matches(CharSequence text);
+
+    /**
+     * Find the best occurrence of the pattern in the text
+     * The best occurrence is the one with the smallest Levenshtein distance,
+     * the left-most one if several are as good, and the shortest one starting there
+     * Unlike matches, the whole text is scanned
+     *
+     * @param text to be searched in
+     * @return the best occurrence, null if the text doesn't contain the pattern
+     */
+    public abstract BitapMatch findBest(CharSequence text);
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public int getLev() {
+        return lev;
+    }
+}
@@ -0,0 +1,124 @@
+package bitap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of calls and time spent in each engine, by the compiled patterns and MultiBitap
+ * Disabled by default, a call then only costs two volatile reads
+ * Once enabled the calls are counted, the time is only measured if timed too: two System.nanoTime() a call
+ *
+ * The calls are also counted per thread, each thread only writes its own counter
+ * so the counts read by other threads may lag a little behind
+ */
+public class EngineStats {
+    public enum Kind {
+        LONG, EXTENDED, MYERS, MULTI
+    }
+
+    // Returned by start() when not timed, System.nanoTime() may return any other value, 0 and negative ones included
+    private static final long UNTIMED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+    private static volatile boolean timed;
+
+    private static final LongAdder[] calls = new LongAdder[Kind.values().length];
+    private static final LongAdder[] nanos = new LongAdder[Kind.values().length];
+
+    // The call counter of each thread, by thread name
+    private static final Map<String, long[]> threadCalls = new ConcurrentHashMap<>();
+    private static final ThreadLocal<long[]> localCalls = ThreadLocal.withInitial(() -> {
+        long[] counter = new long[1];
+        threadCalls.put(Thread.currentThread().getName(), counter);
+        return counter;
+    });
+
+    static {
+        for (int i = 0; i < calls.length; ++i) {
+            calls[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    private EngineStats() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        EngineStats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Measure the time spent in the engines too, enables the counts if set
+     */
+    public static void setTimed(boolean timed) {
+        EngineStats.timed = timed;
+        if (timed) {
+            enabled = true;
+        }
+    }
+
+    public static boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Start timing a call
+     *
+     * @return the start time, to be given to stop
+     */
+    static long start() {
+        return timed ? System.nanoTime() : UNTIMED;
+    }
+
+    /**
+     * Stop timing a call started by start
+     */
+    static void stop(Kind kind, long start) {
+        if (start != UNTIMED) {
+            nanos[kind.ordinal()].add(System.nanoTime() - start);
+        }
+        if (enabled) {
+            calls[kind.ordinal()].increment();
+            ++localCalls.get()[0];
+        }
+    }
+
+    public static long getCalls(Kind kind) {
+        return calls[kind.ordinal()].sum();
+    }
+
+    /**
+     * @return the time spent in the engine, 0 unless timed
+     */
+    public static long getNanos(Kind kind) {
+        return nanos[kind.ordinal()].sum();
+    }
+
+    /**
+     * Calls of all the engines
+     */
+    public static long getCalls() {
+        long total = 0;
+        for (Kind kind : Kind.values()) {
+            total += getCalls(kind);
+        }
+        return total;
+    }
+
+    /**
+     * @return the calls made by each thread, by thread name
+     */
+    public static Map<String, Long> getCallsPerThread() {
+        Map<String, Long> perThread = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : threadCalls.entrySet()) {
+            perThread.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return perThread;
+    }
+}
@@ -0,0 +1,301 @@
+package bitap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fuzzy match many patterns against a text at once
+ * Each pattern keeps its own maximum Levenshtein distance, see BitapPattern.getLev
+ *
+ * Patterns shorter than 64 are packed side by side into 64-bit words (lanes), as many as fit in a word
+ * A lane of a pattern of length m takes m + 1 bits: the right-most bit is the start state of the lane,
+ * the left-most one is its match bit. Shifting a word moves the match bit of a lane into the start bit
+ * of the next lane, so the start bits are cleared after each step and the lanes don't interfere.
+ * Patterns are packed in order of maximum distance then length, so that words with the same number of rows
+ * end up together
+ *
+ * The text is read and translated to Bitap.code once, then the words run over the codes in blocks of BLOCK_SIZE,
+ * a block stops as soon as all the lanes of its words have matched. The words of a block are advanced together,
+ * a row at a time: the tables of a block are laid out word by word, so every step is a loop over BLOCK_SIZE
+ * independent longs, which the JIT compiles to vector instructions (SSE, AVX2 or AVX-512),
+ * while the tables of a block stay small enough for the L1 cache
+ *
+ * Patterns of 64 characters or more don't fit in a word, they are verified one by one with their BitapPattern
+ */
+public class MultiBitap {
+    // Number of words advanced together
+    private static final int BLOCK_SIZE = 64;
+
+    private final int size;
+    private final int numOfWords;
+    private final int numOfBlocks;
+    private final int maxRows;
+
+    // Number of rows of each block, i.e. the maximum Levenshtein distance of its patterns + 1
+    private final int[] rows;
+
+    // masks[(b * (Bitap.ALPHABET_SIZE + 1) + code) * BLOCK_SIZE + v]: the mask of the character code
+    // in the word v of the block b
+    private final long[] masks;
+
+    // notStartBits[b * BLOCK_SIZE + v]: all but the start bits of the word v of the block b
+    private final long[] notStartBits;
+
+    // matchBits[(b * maxRows + k) * BLOCK_SIZE + v]: the match bits of the lanes of the word v of the block b
+    // whose pattern allows k errors
+    private final long[] matchBits;
+
+    // allMatchBits[b * BLOCK_SIZE + v]: all the match bits of the word v of the block b
+    private final long[] allMatchBits;
+
+    // initialBitArray[(b * maxRows + k) * BLOCK_SIZE + v]: the starting row k of the word v of the block b
+    // Row k of a lane is initialized to its state after the sentinel of the single pattern engines:
+    // all-ones, except for the k + 1 right-most columns of the lane
+    private final long[] initialBitArray;
+
+    // Lanes of word w are laneOffsets[w] to laneOffsets[w + 1] - 1
+    // Word w is the word w % BLOCK_SIZE of the block w / BLOCK_SIZE
+    // lanePatterns and laneMatchBits hold their pattern index and match bit
+    private final int[] laneOffsets;
+    private final int[] lanePatterns;
+    private final long[] laneMatchBits;
+
+    // Patterns which match any text (the whole pattern can be deleted)
+    private final int[] alwaysMatch;
+
+    // Patterns of 64 characters or more, and their indices
+    private final BitapPattern[] longPatterns;
+    private final int[] longPatternIndices;
+
+    private MultiBitap(List<BitapPattern> patterns) {
+        size = patterns.size();
+
+        List<Integer> packed = new ArrayList<>();
+        List<Integer> always = new ArrayList<>();
+        List<Integer> longs = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            BitapPattern pattern = patterns.get(i);
+            if (pattern.getLev() >= pattern.getPattern().length()) {
+                always.add(i);
+            } else if (pattern.getPattern().length() < 64) {
+                packed.add(i);
+            } else {
+                longs.add(i);
+            }
+        }
+
+        alwaysMatch = toArray(always);
+        longPatternIndices = toArray(longs);
+        longPatterns = new BitapPattern[longPatternIndices.length];
+        for (int i = 0; i < longPatterns.length; ++i) {
+            longPatterns[i] = patterns.get(longPatternIndices[i]);
+        }
+
+        // Pack by maximum distance, then by length, then by index to keep the packing deterministic
+        packed.sort(Comparator.comparingInt((Integer i) -> patterns.get(i).getLev())
+                .thenComparingInt(i -> patterns.get(i).getPattern().length())
+                .thenComparingInt(i -> i));
+
+        // First pass: assign the lanes to the words
+        int[] laneOffsetsTemp = new int[packed.size() + 1];
+        int[] laneShifts = new int[packed.size()];
+        int words = 0, used = 64, maxLev = 0;
+        for (int lane = 0; lane < packed.size(); ++lane) {
+            BitapPattern pattern = patterns.get(packed.get(lane));
+            int width = pattern.getPattern().length() + 1;
+            if (used + width > 64) {
+                laneOffsetsTemp[words++] = lane;
+                used = 0;
+            }
+            laneShifts[lane] = used;
+            used += width;
+            maxLev = Math.max(maxLev, pattern.getLev());
+        }
+        laneOffsetsTemp[words] = packed.size();
+
+        numOfWords = words;
+        numOfBlocks = (numOfWords + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        maxRows = maxLev + 1;
+        laneOffsets = Arrays.copyOf(laneOffsetsTemp, numOfWords + 1);
+        lanePatterns = toArray(packed);
+        laneMatchBits = new long[packed.size()];
+
+        // Second pass: build the masks and the starting rows
+        // The padding words of the last block have no lane: they never match, and never stop the block
+        int maskSize = Bitap.ALPHABET_SIZE + 1;
+        masks = new long[maskSize * numOfBlocks * BLOCK_SIZE];
+        Arrays.fill(masks, ~0L);
+        rows = new int[numOfBlocks];
+        notStartBits = new long[numOfBlocks * BLOCK_SIZE];
+        Arrays.fill(notStartBits, ~0L);
+        allMatchBits = new long[numOfBlocks * BLOCK_SIZE];
+        matchBits = new long[maxRows * numOfBlocks * BLOCK_SIZE];
+        initialBitArray = new long[maxRows * numOfBlocks * BLOCK_SIZE];
+        Arrays.fill(initialBitArray, ~0L);
+
+        for (int w = 0; w < numOfWords; ++w) {
+            int b = w / BLOCK_SIZE, v = w % BLOCK_SIZE;
+
+            for (int lane = laneOffsets[w]; lane < laneOffsets[w + 1]; ++lane) {
+                BitapPattern pattern = patterns.get(lanePatterns[lane]);
+                String needle = pattern.getPattern();
+                int shift = laneShifts[lane];
+
+                rows[b] = Math.max(rows[b], pattern.getLev() + 1);
+                notStartBits[b * BLOCK_SIZE + v] &= ~(1L << shift);
+                laneMatchBits[lane] = 1L << (shift + needle.length());
+                allMatchBits[b * BLOCK_SIZE + v] |= laneMatchBits[lane];
+                matchBits[(b * maxRows + pattern.getLev()) * BLOCK_SIZE + v] |= laneMatchBits[lane];
+
+                for (int k = 0; k < maxRows; ++k) {
+                    for (int pos = 0; pos <= Math.min(k, needle.length()); ++pos) {
+                        initialBitArray[(b * maxRows + k) * BLOCK_SIZE + v] &= ~(1L << (shift + pos));
+                    }
+                }
+
+                for (int pos = 0; pos < needle.length(); ++pos) {
+                    int code = Bitap.code(needle.charAt(pos));
+                    if (code != Bitap.ALPHABET_SIZE) {
+                        masks[(b * maskSize + code) * BLOCK_SIZE + v] &= ~(1L << (shift + pos + 1));
+                    }
+                }
+            }
+
+            for (int code = 0; code < maskSize; ++code) {
+                masks[(b * maskSize + code) * BLOCK_SIZE + v] &= notStartBits[b * BLOCK_SIZE + v];
+            }
+        }
+    }
+
+    /**
+     * Pack the patterns
+     *
+     * @param patterns compiled patterns, the results refer to them by their index in this list
+     * @return the packed patterns
+     */
+    public static MultiBitap compile(List<BitapPattern> patterns) {
+        return new MultiBitap(patterns);
+    }
+
+    /**
+     * Number of patterns
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find all the patterns "contained" by the text
+     * Same as calling BitapPattern.matches on each pattern, but the packed patterns are matched a block of words at a time
+     *
+     * @param text to be searched in
+     * @param matched bit i is set if the pattern i is contained in the text, other bits are left untouched
+     */
+    public void matchAll(CharSequence text, BitSet matched) {
+        long start = EngineStats.start();
+        for (int index : alwaysMatch) {
+            matched.set(index);
+        }
+
+        if (numOfWords > 0) {
+            byte[] codes = new byte[text.length()];
+            for (int i = 0; i < codes.length; ++i) {
+                codes[i] = (byte) Bitap.code(text.charAt(i));
+            }
+
+            // Each row in its own array: the JIT doesn't vectorize a loop reading and writing
+            // the same array at different offsets
+            long[][] bitArray = new long[maxRows][BLOCK_SIZE];
+            long[] old = new long[BLOCK_SIZE];
+            long[] found = new long[BLOCK_SIZE];
+            for (int b = 0; b < numOfBlocks; ++b) {
+                scan(codes, b, bitArray, old, found);
+
+                for (int w = b * BLOCK_SIZE; w < Math.min(numOfWords, (b + 1) * BLOCK_SIZE); ++w) {
+                    long wordFound = found[w - b * BLOCK_SIZE];
+                    if (wordFound != 0) {
+                        for (int lane = laneOffsets[w]; lane < laneOffsets[w + 1]; ++lane) {
+                            if ((wordFound & laneMatchBits[lane]) != 0) {
+                                matched.set(lanePatterns[lane]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        EngineStats.stop(EngineStats.Kind.MULTI, start);
+
+        for (int i = 0; i < longPatterns.length; ++i) {
+            if (longPatterns[i].matches(text)) {
+                matched.set(longPatternIndices[i]);
+            }
+        }
+    }
+
+    /*
+     * Same recurrence as BitapLong, but the text is scanned forward with
+     * the needles in their original order: only the presence of a match
+     * is reported, so the direction doesn't matter.
+     *
+     * The words of the block b are updated side by side, a row at a time,
+     * old holds the old values of the previous row. The loops over the
+     * words have no dependency between their iterations.
+     * found[v] receives the match bits of the lanes of the word v which have matched.
+     */
+    private void scan(byte[] codes, int b, long[][] bitArray, long[] old, long[] found) {
+        int numOfRows = rows[b];
+        int maskStart = b * (Bitap.ALPHABET_SIZE + 1) * BLOCK_SIZE;
+        int rowStart = b * maxRows * BLOCK_SIZE;
+        int wordStart = b * BLOCK_SIZE;
+
+        for (int k = 0; k < numOfRows; ++k) {
+            System.arraycopy(initialBitArray, rowStart + k * BLOCK_SIZE, bitArray[k], 0, BLOCK_SIZE);
+        }
+        Arrays.fill(found, 0);
+
+        for (int i = 0; i < codes.length; ++i) {
+            int mask = maskStart + (codes[i] & 0xFF) * BLOCK_SIZE;
+
+            long[] current = bitArray[0];
+            for (int v = 0; v < BLOCK_SIZE; ++v) {
+                old[v] = current[v];
+                current[v] = ((current[v] << 1) | masks[mask + v]) & notStartBits[wordStart + v];
+                found[v] |= ~current[v] & matchBits[rowStart + v];
+            }
+
+            for (int k = 1; k < numOfRows; ++k) {
+                long[] previous = bitArray[k - 1];
+                current = bitArray[k];
+                int row = rowStart + k * BLOCK_SIZE;
+
+                for (int v = 0; v < BLOCK_SIZE; ++v) {
+                    long ins = old[v];
+                    long match = (current[v] << 1) | masks[mask + v];
+                    old[v] = current[v];
+
+                    current[v] = ins & (ins << 1) & (previous[v] << 1) & match;
+                    found[v] |= ~current[v] & matchBits[row + v];
+                }
+            }
+
+            long missing = 0;
+            for (int v = 0; v < BLOCK_SIZE; ++v) {
+                missing |= found[v] ^ allMatchBits[wordStart + v];
+            }
+            if (missing == 0) {
+                break;
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
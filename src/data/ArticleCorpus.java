@@ -0,0 +1,38 @@
+package data;
+
+import java.util.List;
+
+/**
+ * Corpus backed by Article objects, as loaded from the DB
+ */
+public class ArticleCorpus implements Corpus {
+    private final List<Article> articles;
+
+    public ArticleCorpus(List<Article> articles) {
+        this.articles = articles;
+    }
+
+    public List<Article> getArticles() {
+        return articles;
+    }
+
+    @Override
+    public int size() {
+        return articles.size();
+    }
+
+    @Override
+    public int getId(int index) {
+        return articles.get(index).getId();
+    }
+
+    @Override
+    public CharSequence getTitle(int index) {
+        return articles.get(index).getTitle();
+    }
+
+    @Override
+    public CharSequence getReference(int index) {
+        return articles.get(index).getReferences().getRaw();
+    }
+}
@@ -0,0 +1,21 @@
+package data;
+
+/**
+ * The articles to be matched, accessed by their index
+ * Indices are in [0, size()) and ordered by id
+ */
+public interface Corpus {
+    int size();
+
+    int getId(int index);
+
+    /**
+     * @return the cleaned title
+     */
+    CharSequence getTitle(int index);
+
+    /**
+     * @return the cleaned raw reference string
+     */
+    CharSequence getReference(int index);
+}
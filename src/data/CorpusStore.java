@@ -0,0 +1,258 @@
+package data;
+
+import bitap.Bitap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact corpus of cleaned titles and references in a single memory-mapped file
+ * Nothing but the mappings lives on the heap: the texts are read in place by the matchers,
+ * through CharSequence views decoding one byte per character
+ *
+ * Each character is stored as its Bitap.code, a single byte (cleaned strings only hold characters of the Alphabet)
+ * The file is made of:
+ * - a header: MAGIC, VERSION, number of articles n
+ * - the ids, n ints, in increasing order
+ * - the offsets, 2n + 1 longs: the title of the article i is [offsets[2i], offsets[2i + 1]),
+ *   its reference [offsets[2i + 1], offsets[2i + 2]), relatively to the start of the texts
+ * - the texts
+ *
+ * A mapping can't be larger than 2 GB, so the texts are mapped in several segments,
+ * each one holding whole articles
+ */
+public class CorpusStore implements Corpus, AutoCloseable {
+    private static final int MAGIC = 0x4C524353;  // "LRCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final int size;
+    private final IntBuffer ids;
+    private final LongBuffer offsets;
+
+    // The texts of the articles [segmentStarts[s], segmentStarts[s + 1]) are in segments[s]
+    private final int[] segmentStarts;
+    private final MappedByteBuffer[] segments;
+    private final long[] segmentOffsets;
+
+    private CorpusStore(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        FileChannel channel = file.getChannel();
+
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            file.close();
+            throw new IOException("Not a corpus store: " + path);
+        }
+        size = header.getInt();
+
+        long indexSize = 4L * size + 8L * (2 * size + 1);
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexSize);
+        index.limit(4 * size);
+        ids = index.slice().asIntBuffer();
+        index.limit((int) indexSize).position(4 * size);
+        offsets = index.slice().asLongBuffer();
+
+        // Cut the texts in segments of whole articles
+        long textsStart = HEADER_SIZE + indexSize;
+        List<Integer> starts = new ArrayList<>();
+        List<MappedByteBuffer> mapped = new ArrayList<>();
+        List<Long> mappedOffsets = new ArrayList<>();
+        int first = 0;
+        while (first < size) {
+            int last = first + 1;
+            while (last < size && offsets.get(2 * last + 2) - offsets.get(2 * first) <= MAX_SEGMENT_SIZE) {
+                ++last;
+            }
+
+            long start = offsets.get(2 * first);
+            starts.add(first);
+            mappedOffsets.add(start);
+            mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, textsStart + start, offsets.get(2 * last) - start));
+            first = last;
+        }
+        starts.add(size);
+
+        segmentStarts = new int[starts.size()];
+        for (int i = 0; i < segmentStarts.length; ++i) {
+            segmentStarts[i] = starts.get(i);
+        }
+        segments = mapped.toArray(new MappedByteBuffer[0]);
+        segmentOffsets = new long[mappedOffsets.size()];
+        for (int i = 0; i < segmentOffsets.length; ++i) {
+            segmentOffsets[i] = mappedOffsets.get(i);
+        }
+    }
+
+    /**
+     * Map a corpus store
+     *
+     * @param path file written by write()
+     * @return the mapped corpus
+     * @throws IOException if the file can't be read or isn't a corpus store
+     */
+    public static CorpusStore open(File path) throws IOException {
+        return new CorpusStore(path);
+    }
+
+    /**
+     * Write a corpus into a file, which can then be mapped with open()
+     *
+     * @param path file to be written
+     * @param corpus articles in order of id, with cleaned titles and references
+     * @throws IOException if the file can't be written
+     */
+    public static void write(File path, Corpus corpus) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(corpus.size());
+
+            for (int i = 0; i < corpus.size(); ++i) {
+                output.writeInt(corpus.getId(i));
+            }
+
+            long offset = 0;
+            output.writeLong(offset);
+            for (int i = 0; i < corpus.size(); ++i) {
+                offset += corpus.getTitle(i).length();
+                output.writeLong(offset);
+                offset += corpus.getReference(i).length();
+                output.writeLong(offset);
+            }
+
+            for (int i = 0; i < corpus.size(); ++i) {
+                writeText(output, corpus.getTitle(i));
+                writeText(output, corpus.getReference(i));
+            }
+        }
+    }
+
+    private static void writeText(DataOutputStream output, CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); ++i) {
+            output.writeByte(Bitap.code(text.charAt(i)));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getId(int index) {
+        return ids.get(index);
+    }
+
+    /**
+     * Find an article by id
+     *
+     * @param id id of the article
+     * @return its index, or a negative value if there is no article with this id
+     */
+    public int indexOf(int id) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = ids.get(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public CharSequence getTitle(int index) {
+        return text(index, 2 * index);
+    }
+
+    @Override
+    public CharSequence getReference(int index) {
+        return text(index, 2 * index + 1);
+    }
+
+    private CharSequence text(int index, int offsetIndex) {
+        int segment = segmentOf(index);
+        long start = offsets.get(offsetIndex) - segmentOffsets[segment];
+        long end = offsets.get(offsetIndex + 1) - segmentOffsets[segment];
+        return new Text(segments[segment], (int) start, (int) (end - start));
+    }
+
+    private int segmentOf(int index) {
+        int low = 0, high = segments.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segmentStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Unmapping is left to the garbage collector, the texts can still be read after close()
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * A text of the store, read in place
+     */
+    private static class Text implements CharSequence {
+        private final ByteBuffer segment;
+        private final int start;
+        private final int length;
+
+        private Text(ByteBuffer segment, int start, int length) {
+            this.segment = segment;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return Bitap.letter(segment.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Text(segment, this.start + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; ++i) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Split a raw reference string into its entries, one per cited work
+ * Works on the raw string: cleaning removes the line breaks
+ *
+ * In order of preference:
+ * - Numbered entries: "[1] ... [2] ..." anywhere, or "1. ..." / "1) ..." at the start of the lines
+ *   Only markers following each other (1, 2, 3...) count, so numbers inside the entries don't split them
+ * - One entry per line: lines which look like the continuation of the previous one are joined to it
+ * - Author-year entries on a single line: "... 2010. Nguyen, V. A. (2015). ..."
+ */
+public class ReferenceSegmenter {
+    private static final Pattern BRACKET_NUMBER = Pattern.compile("\\[(\\d{1,3})\\]");
+    private static final Pattern LINE_NUMBER = Pattern.compile("(?m)^[ \\t]*(\\d{1,3})[.)][ \\t]");
+
+    // The start of an author-year entry, following the end of the previous one:
+    // "Smith, J." or "Smith, John", or a Vietnamese full name "Nguyễn Văn An", then a year soon after
+    private static final Pattern AUTHOR_YEAR = Pattern.compile(
+            "[.)]\\s+(?=\\p{Lu}[\\p{L}'-]+(?:,\\s*\\p{Lu}|(?:\\s\\p{Lu}[\\p{L}-]*){1,3}[,.]?\\s)[^\\n]{0,100}?\\b(?:19|20)\\d{2}[a-z]?\\b)");
+
+    private ReferenceSegmenter() {
+    }
+
+    /**
+     * @param raw raw reference string
+     * @return the entries, trimmed and in order, without the empty ones
+     */
+    public static List<String> split(String raw) {
+        List<String> entries = new ArrayList<>();
+
+        List<Integer> starts = numberedStarts(raw);
+        if (starts.size() >= 2) {
+            addIfNotBlank(entries, raw.substring(0, starts.get(0)));
+            for (int i = 0; i < starts.size(); ++i) {
+                int end = i + 1 < starts.size() ? starts.get(i + 1) : raw.length();
+                addIfNotBlank(entries, raw.substring(starts.get(i), end));
+            }
+            return entries;
+        }
+
+        String[] lines = raw.split("\\r?\\n|\\r");
+        if (lines.length >= 2) {
+            StringBuilder entry = new StringBuilder();
+            for (String line : lines) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (entry.length() > 0 && !continues(entry, line)) {
+                    addIfNotBlank(entries, entry.toString());
+                    entry.setLength(0);
+                }
+                if (entry.length() > 0 && entry.charAt(entry.length() - 1) != '-') {
+                    entry.append(' ');
+                }
+                entry.append(line);
+            }
+            addIfNotBlank(entries, entry.toString());
+            return entries;
+        }
+
+        Matcher matcher = AUTHOR_YEAR.matcher(raw);
+        int start = 0;
+        while (matcher.find()) {
+            addIfNotBlank(entries, raw.substring(start, matcher.start() + 1));
+            start = matcher.end();
+        }
+        addIfNotBlank(entries, raw.substring(start));
+        return entries;
+    }
+
+    // Start of the numbered entries, empty if the entries aren't numbered
+    private static List<Integer> numberedStarts(String raw) {
+        List<Integer> starts = sequence(BRACKET_NUMBER.matcher(raw));
+        if (starts.size() < 2) {
+            starts = sequence(LINE_NUMBER.matcher(raw));
+        }
+        return starts;
+    }
+
+    // Positions of the markers numbered n, n + 1, n + 2... from the first one found
+    private static List<Integer> sequence(Matcher matcher) {
+        List<Integer> starts = new ArrayList<>();
+        int expected = -1;
+        while (matcher.find()) {
+            int number = Integer.parseInt(matcher.group(1));
+            if (expected == -1 || number == expected) {
+                starts.add(matcher.start());
+                expected = number + 1;
+            }
+        }
+        return starts;
+    }
+
+    // A wrapped line: it starts in lower case, or the previous one stops in the middle of a sentence
+    private static boolean continues(CharSequence entry, String line) {
+        char last = entry.charAt(entry.length() - 1);
+        return Character.isLowerCase(line.charAt(0)) || last == '-' || last == ',' || last == ':' || last == '&';
+    }
+
+    private static void addIfNotBlank(List<String> entries, String entry) {
+        entry = entry.trim();
+        if (!entry.isEmpty()) {
+            entries.add(entry);
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package data;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class References {
+    // Separates the entries in the raw string, see ReferenceSegmenter
+    // Not in the Bitap alphabet, so that no title is matched across two entries
+    public static final char ENTRY_SEPARATOR = '\n';
+
     private String raw;
-    private ArrayList<Integer> articleIDs = null;
 
     public References() {
     }
@@ -21,17 +25,27 @@ public class References {
         this.raw = raw;
     }
 
-    public ArrayList<Integer> getArticleIDs() {
-        return articleIDs;
-    }
-
-    public void setArticleIDs(ArrayList<Integer> articleIDs) {
-        this.articleIDs = articleIDs;
+    /**
+     * @return the entries of the raw string, one per cited work
+     */
+    public List<CharSequence> getEntries() {
+        return entries(raw);
     }
 
-    public void addArticleID(Integer id) {
-        if (articleIDs != null) {
-            articleIDs.add(id);
+    /**
+     * Split a raw string into its entries, the entries are views of the string
+     */
+    public static List<CharSequence> entries(CharSequence raw) {
+        List<CharSequence> entries = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= raw.length(); ++i) {
+            if (i == raw.length() || raw.charAt(i) == ENTRY_SEPARATOR) {
+                if (i > start) {
+                    entries.add(raw.subSequence(start, i));
+                }
+                start = i + 1;
+            }
         }
+        return entries;
     }
 }
@@ -0,0 +1,239 @@
+package db;
+
+import bitap.BitapPattern;
+import data.Article;
+import data.ReferenceSegmenter;
+import data.References;
+import util.StringUtl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream the articles table into memory
+ *
+ * The table is read in pages of pageSize rows with keyset pagination over id, i.e. "WHERE id > last id of
+ * the previous page", with a forward-only cursor. Memory used by the driver is bounded by a page, whatever
+ * the size of the table, and a page costs the same at the end of the table as at the beginning.
+ *
+ * Each page is handed to a pool of cleaners through a bounded queue: they clean the titles and references
+ * and compile the titles, while the next pages are being read. When the queue is full, the reading thread
+ * cleans the page itself, so the reads never get too far ahead of the cleaners.
+ *
+ * Only standard SQL is used, so the loader runs against any JDBC database with an articles table
+ * (id, title, reference), e.g. an embedded H2 or SQLite database in place of MySQL.
+ */
+public class ArticleLoader {
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final String PAGE_QUERY = "SELECT id, title, reference FROM articles WHERE id > ? ORDER BY id LIMIT ?";
+
+    private final Connection connection;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int numOfCleaners = Runtime.getRuntime().availableProcessors();
+    private int afterId = Integer.MIN_VALUE;
+    private int limit = Integer.MAX_VALUE;
+    private boolean fold;
+
+    private int lastId;
+
+    // Read by the metrics while loading
+    private volatile int numOfRows;
+    private volatile int numOfPendingPages;
+
+    public ArticleLoader(Connection connection) {
+        this.connection = connection;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public void setNumOfCleaners(int numOfCleaners) {
+        this.numOfCleaners = numOfCleaners;
+    }
+
+    /**
+     * Only load the articles whose id is greater than afterId
+     */
+    public void setAfterId(int afterId) {
+        this.afterId = afterId;
+    }
+
+    /**
+     * Stop after reading limit rows, all rows are read by default
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Fold the titles and references (StringUtl.fold) instead of only cleaning them (StringUtl.clean)
+     */
+    public void setFold(boolean fold) {
+        this.fold = fold;
+    }
+
+    /**
+     * The greatest id read by the last load, or afterId if there was no row
+     */
+    public int getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Number of rows read by the last load, including the ones without references
+     */
+    public int getNumOfRows() {
+        return numOfRows;
+    }
+
+    /**
+     * Number of pages read but not collected yet (being cleaned, or waiting for a cleaner)
+     */
+    public int getNumOfPendingPages() {
+        return numOfPendingPages;
+    }
+
+    /**
+     * Load the articles in order of id
+     * Only the articles with a non-empty raw reference are kept, as they are the only ones which can cite
+     *
+     * @param articles the cleaned articles are appended to it
+     * @param titlePatterns the compiled titles are appended to it, titlePatterns.get(i) is the title of articles.get(i)
+     * @throws SQLException if a page can't be read
+     */
+    public void load(List<Article> articles, List<BitapPattern> titlePatterns) throws SQLException {
+        lastId = afterId;
+        numOfRows = 0;
+
+        ThreadPoolExecutor cleaners = new ThreadPoolExecutor(numOfCleaners, numOfCleaners, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * numOfCleaners), new ThreadPoolExecutor.CallerRunsPolicy());
+        Queue<Future<Page>> pending = new ArrayDeque<>();
+
+        try (PreparedStatement statement = connection.prepareStatement(PAGE_QUERY,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(pageSize);
+
+            while (numOfRows < limit) {
+                statement.setInt(1, lastId);
+                statement.setInt(2, Math.min(pageSize, limit - numOfRows));
+
+                Page page = new Page();
+                try (ResultSet pageSet = statement.executeQuery()) {
+                    while (pageSet.next()) {
+                        page.add(pageSet.getInt(1), pageSet.getString(2), pageSet.getString(3));
+                    }
+                }
+
+                if (page.size() == 0) {
+                    break;
+                }
+                lastId = page.ids.get(page.size() - 1);
+                numOfRows += page.size();
+
+                pending.add(cleaners.submit(() -> page.clean(fold)));
+
+                // Collect the pages already cleaned, in order
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    collect(pending.poll(), articles, titlePatterns);
+                }
+                numOfPendingPages = pending.size();
+            }
+
+            while (!pending.isEmpty()) {
+                collect(pending.poll(), articles, titlePatterns);
+                numOfPendingPages = pending.size();
+            }
+        } finally {
+            cleaners.shutdownNow();
+        }
+    }
+
+    private static void collect(Future<Page> future, List<Article> articles, List<BitapPattern> titlePatterns)
+            throws SQLException {
+        try {
+            Page page = future.get();
+            articles.addAll(page.articles);
+            titlePatterns.addAll(page.titlePatterns);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while cleaning the articles", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Failed to clean the articles", e.getCause());
+        }
+    }
+
+    /**
+     * Rows of a page, raw then cleaned
+     */
+    private static class Page {
+        private final List<Integer> ids = new ArrayList<>();
+        private final List<String> titles = new ArrayList<>();
+        private final List<String> rawReferences = new ArrayList<>();
+
+        private final List<Article> articles = new ArrayList<>();
+        private final List<BitapPattern> titlePatterns = new ArrayList<>();
+
+        private void add(int id, String title, String rawReference) {
+            ids.add(id);
+            titles.add(title);
+            rawReferences.add(rawReference);
+        }
+
+        private int size() {
+            return ids.size();
+        }
+
+        private Page clean(boolean fold) {
+            for (int i = 0; i < size(); ++i) {
+                String rawReference = rawReferences.get(i);
+
+                // Only create an Article if the raw reference string is valuable
+                if (rawReference != null && rawReference.length() != 0) {
+                    Article article = new Article();
+
+                    article.setId(ids.get(i));
+                    String title = titles.get(i);
+                    article.setTitle(fold ? StringUtl.fold(title) : StringUtl.clean(title));
+                    article.setReferences(new References(cleanReference(rawReference, fold)));
+
+                    articles.add(article);
+                    titlePatterns.add(BitapPattern.compile(article.getTitle(), article.getTitle().length() / 10));
+                }
+            }
+
+            // The raw rows aren't needed anymore
+            titles.clear();
+            rawReferences.clear();
+            return this;
+        }
+
+        // Split the raw reference into its entries, clean them one by one
+        // The entries are kept apart by References.ENTRY_SEPARATOR
+        private static String cleanReference(String rawReference, boolean fold) {
+            StringBuilder cleaned = new StringBuilder(rawReference.length());
+            for (String entry : ReferenceSegmenter.split(rawReference)) {
+                String cleanedEntry = fold ? StringUtl.fold(entry) : StringUtl.clean(entry);
+                if (!cleanedEntry.isEmpty()) {
+                    if (cleaned.length() > 0) {
+                        cleaned.append(References.ENTRY_SEPARATOR);
+                    }
+                    cleaned.append(cleanedEntry);
+                }
+            }
+            return cleaned.toString();
+        }
+    }
+}
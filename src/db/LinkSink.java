@@ -0,0 +1,22 @@
+package db;
+
+/**
+ * Receives the citation links found by the matchers, from several threads
+ */
+public interface LinkSink {
+    /**
+     * @param citingId id of the citing article
+     * @param citedIds ids of the articles it cites, may be empty
+     */
+    void add(int citingId, int[] citedIds);
+
+    /**
+     * @return a sink passing the links to both sinks, first to a
+     */
+    static LinkSink both(LinkSink a, LinkSink b) {
+        return (citingId, citedIds) -> {
+            a.add(citingId, citedIds);
+            b.add(citingId, citedIds);
+        };
+    }
+}
@@ -0,0 +1,233 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Persist the citation links (citing_id, cited_id) found by the matchers
+ *
+ * The matchers hand the links of an article to add(), which puts them in a bounded queue
+ * A dedicated thread drains the queue into JDBC batch inserts of batchSize rows, and commits
+ * every batchesPerTransaction batches. With MySQL, rewriteBatchedStatements=true in the connection
+ * URL turns each batch into a single multi-row INSERT.
+ *
+ * The writer owns its connection: it must not be used by another thread while the writer runs
+ * If a write fails, the remaining links are discarded (so that the matchers never block) and close() throws
+ */
+public class LinkWriter implements LinkSink, AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_BATCHES_PER_TRANSACTION = 10;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS article_links ("
+            + "citing_id INT NOT NULL, cited_id INT NOT NULL, PRIMARY KEY (citing_id, cited_id))";
+    private static final String INSERT = "INSERT INTO article_links (citing_id, cited_id) VALUES (?, ?)";
+
+    // Tells the writer thread to stop
+    private static final Links END = new Links(0, new int[0]);
+
+    private final Connection connection;
+    private final BlockingQueue<Links> queue;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int batchesPerTransaction = DEFAULT_BATCHES_PER_TRANSACTION;
+
+    private Thread thread;
+    private volatile SQLException failure;
+    private long numOfLinks;
+
+    public LinkWriter(Connection connection) {
+        this(connection, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param connection connection used by the writer only
+     * @param queueCapacity maximum number of articles waiting to be written
+     */
+    public LinkWriter(Connection connection, int queueCapacity) {
+        this.connection = connection;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchesPerTransaction(int batchesPerTransaction) {
+        this.batchesPerTransaction = batchesPerTransaction;
+    }
+
+    /**
+     * Create the article_links table if it doesn't exist
+     */
+    public void createTable() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE_TABLE);
+        }
+    }
+
+    /**
+     * Delete all the links, before a full run
+     */
+    public void clear() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM article_links");
+        }
+    }
+
+    /**
+     * Delete the links from or to the articles whose id is greater than lastId
+     * Before an incremental run, in case the previous one stopped before updating its watermark
+     */
+    public void deleteAfter(int lastId) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM article_links WHERE citing_id > ? OR cited_id > ?")) {
+            delete.setInt(1, lastId);
+            delete.setInt(2, lastId);
+            delete.executeUpdate();
+        }
+    }
+
+    /**
+     * Start the writer thread
+     */
+    public void start() {
+        thread = new Thread(this::write, "link-writer");
+        thread.start();
+    }
+
+    /**
+     * Queue the links of an article, block while the queue is full
+     *
+     * @param citingId id of the citing article
+     * @param citedIds ids of the articles it cites
+     */
+    @Override
+    public void add(int citingId, int[] citedIds) {
+        if (citedIds.length == 0) {
+            return;
+        }
+
+        try {
+            queue.put(new Links(citingId, citedIds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the queued links, then stop the writer thread
+     *
+     * @throws SQLException if a write failed
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while writing the links", e);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Number of articles whose links wait in the queue
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Number of links written, valid after close()
+     */
+    public long getNumOfLinks() {
+        return numOfLinks;
+    }
+
+    private void write() {
+        boolean autoCommit = true;
+        boolean ended = false;
+        try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            int rows = 0, batches = 0;
+            for (Links links = queue.take(); links != END; links = queue.take()) {
+                for (int citedId : links.citedIds) {
+                    insert.setInt(1, links.citingId);
+                    insert.setInt(2, citedId);
+                    insert.addBatch();
+
+                    if (++rows == batchSize) {
+                        insert.executeBatch();
+                        numOfLinks += rows;
+                        rows = 0;
+
+                        if (++batches == batchesPerTransaction) {
+                            connection.commit();
+                            batches = 0;
+                        }
+                    }
+                }
+            }
+            ended = true;
+
+            if (rows > 0) {
+                insert.executeBatch();
+                numOfLinks += rows;
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            failure = e;
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            if (!ended) {
+                discard();
+            }
+        } catch (InterruptedException e) {
+            failure = new SQLException("Interrupted while writing the links", e);
+        } finally {
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    // Drain the queue until the end, so that add() doesn't block after a failure
+    private void discard() {
+        try {
+            while (queue.take() != END) {
+                // Nothing
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Links of a citing article
+     */
+    private static class Links {
+        private final int citingId;
+        private final int[] citedIds;
+
+        private Links(int citingId, int[] citedIds) {
+            this.citingId = citingId;
+            this.citedIds = citedIds;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The greatest article id whose links are in article_links, stored in the link_watermark table
+ * Articles with a greater id are new, and are linked by the next incremental run
+ *
+ * The articles table has no modification time, so an article edited in place isn't seen as new,
+ * a full run is needed to relink it
+ */
+public class Watermark {
+    // Returned by read() when no run has completed yet
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS link_watermark ("
+            + "name VARCHAR(64) NOT NULL PRIMARY KEY, last_id INT NOT NULL)";
+    private static final String NAME = "articles";
+
+    private final Connection connection;
+
+    public Watermark(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Create the link_watermark table if it doesn't exist
+     */
+    public void createTable() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE_TABLE);
+        }
+    }
+
+    /**
+     * @return the greatest linked id, or NONE
+     */
+    public int read() throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT last_id FROM link_watermark WHERE name = ?")) {
+            select.setString(1, NAME);
+            try (ResultSet lastId = select.executeQuery()) {
+                return lastId.next() ? lastId.getInt(1) : NONE;
+            }
+        }
+    }
+
+    /**
+     * Store the greatest linked id, once its links are written
+     */
+    public void write(int lastId) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement("UPDATE link_watermark SET last_id = ? WHERE name = ?")) {
+            update.setInt(1, lastId);
+            update.setString(2, NAME);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO link_watermark (name, last_id) VALUES (?, ?)")) {
+            insert.setString(1, NAME);
+            insert.setInt(2, lastId);
+            insert.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package inMemory;
+
+import data.Corpus;
+import db.LinkSink;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the chunks matched by the RefMatchers, so that a run which dies can be resumed
+ * Each record holds a chunk (its range and title offset), its counters, its report, its table and its links
+ *
+ * The records are appended as the chunks complete, and forced to disk in batches: every SYNC_RECORDS records
+ * or SYNC_INTERVAL ms, whichever comes first. A crash loses at most the unforced records, which are matched again
+ * Each record carries its length and a CRC32, a torn record at the end of the file is cut off on resume
+ *
+ * The file starts with a key of the job (titles, references, options), a file of another job is discarded
+ */
+public class Checkpoint implements AutoCloseable {
+    private static final int MAGIC = 0x4C524350;  // "LRCP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int SYNC_RECORDS = 256;
+    private static final long SYNC_INTERVAL = 1000;
+
+    private final File file;
+    private final FileChannel channel;
+
+    // The chunks done by previous runs, by title offset and start
+    private final Map<Long, Done> done = new HashMap<>();
+
+    // Records appended since the last force, and its time
+    private int unsynced;
+    private long lastSync = System.currentTimeMillis();
+
+    /**
+     * Open the checkpoint of a job, the file is created or discarded if it doesn't belong to the job
+     *
+     * @param file checkpoint file
+     * @param jobKey identifies the job, see jobKey
+     */
+    public Checkpoint(File file, long jobKey) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() >= HEADER_SIZE) {
+            readFully(header, 0);
+        }
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION
+                || header.getLong() != jobKey) {
+            header.clear();
+            header.putInt(MAGIC).putInt(VERSION).putLong(jobKey).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Identify a job: its titles, its references and the options changing its results
+     *
+     * @param corpus the articles
+     * @param titles fingerprint of the titles, see TitleMatcher.fingerprint
+     * @param firstNew index of the first new article of an incremental run, 0 otherwise
+     * @param resolveOverlaps see ReferenceMatcher.resolveOverlaps
+     */
+    public static long jobKey(Corpus corpus, long titles, int firstNew, boolean resolveOverlaps) {
+        long key = (titles * 31 + firstNew) * 31 + (resolveOverlaps ? 1 : 0);
+        for (int i = 0; i < corpus.size(); ++i) {
+            CharSequence reference = corpus.getReference(i);
+            long hash = corpus.getId(i);
+            for (int j = 0; j < reference.length(); ++j) {
+                hash = hash * 31 + reference.charAt(j);
+            }
+            key = (key ^ hash) * 0x100000001B3L;
+        }
+        return key;
+    }
+
+    /**
+     * Replay the chunks done by previous runs, and cut off a torn record at the end of the file
+     *
+     * @param resultWriter receives their report and table
+     * @param sink receives their links
+     * @return the number of chunks done
+     */
+    public synchronized int resume(ResultWriter resultWriter, LinkSink sink) throws IOException {
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        while (position + prefix.capacity() <= size) {
+            prefix.clear();
+            readFully(prefix, position);
+            int length = prefix.getInt();
+            int crc = prefix.getInt();
+            if (length < 0 || position + prefix.capacity() + length > size) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(record, position + prefix.capacity());
+            CRC32 check = new CRC32();
+            check.update(record.array(), 0, length);
+            if ((int) check.getValue() != crc) {
+                break;
+            }
+
+            replay(record, resultWriter, sink);
+            position += prefix.capacity() + length;
+        }
+
+        channel.truncate(position);
+        channel.position(position);
+        return done.size();
+    }
+
+    /**
+     * @return the counters of a chunk done by a previous run, null if it must be matched
+     */
+    public synchronized MatchResult getDone(int start, int end, int titleOffset) {
+        Done chunk = done.get(key(start, titleOffset));
+        return chunk != null && chunk.end == end ? new MatchResult(chunk.matchCounter, chunk.articlesHaveMatch) : null;
+    }
+
+    /**
+     * Record a matched chunk, from any thread
+     *
+     * @param links citing id, number of cited ids then the cited ids, for each citing article with links
+     */
+    public void add(int start, int end, int titleOffset, MatchResult result,
+                    CharSequence report, CharSequence table, TIntArrayList links) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(start);
+        record.writeInt(end);
+        record.writeInt(titleOffset);
+        record.writeInt(result.getMatchCounter());
+        record.writeInt(result.getArticlesHaveMatch());
+        writeText(record, report);
+        writeText(record, table);
+        record.writeInt(links.size());
+        for (int k = 0; k < links.size(); ++k) {
+            record.writeInt(links.getQuick(k));
+        }
+        record.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        ByteBuffer buffer = ByteBuffer.allocate(8 + bytes.size());
+        buffer.putInt(bytes.size()).putInt((int) crc.getValue()).put(bytes.toByteArray()).flip();
+
+        boolean sync = false;
+        synchronized (this) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            long now = System.currentTimeMillis();
+            if (++unsynced >= SYNC_RECORDS || now - lastSync >= SYNC_INTERVAL) {
+                unsynced = 0;
+                lastSync = now;
+                sync = true;
+            }
+        }
+
+        // Outside of the lock, the other threads keep appending meanwhile
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Force the last records to disk
+     */
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Close and delete the file, once the run has completed
+     */
+    public void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void replay(ByteBuffer record, ResultWriter resultWriter, LinkSink sink) {
+        int start = record.getInt();
+        int end = record.getInt();
+        int titleOffset = record.getInt();
+        int matchCounter = record.getInt();
+        int articlesHaveMatch = record.getInt();
+        resultWriter.write(start, readText(record), readText(record));
+
+        int numOfInts = record.getInt();
+        for (int read = 0; read < numOfInts; ) {
+            int citingId = record.getInt();
+            int[] citedIds = new int[record.getInt()];
+            for (int c = 0; c < citedIds.length; ++c) {
+                citedIds[c] = record.getInt();
+            }
+            sink.add(citingId, citedIds);
+            read += 2 + citedIds.length;
+        }
+
+        done.put(key(start, titleOffset), new Done(end, matchCounter, articlesHaveMatch));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated checkpoint: " + file);
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeText(DataOutputStream output, CharSequence text) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readText(ByteBuffer record) {
+        int length = record.getInt();
+        String text = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return text;
+    }
+
+    private static long key(int start, int titleOffset) {
+        return ((long) titleOffset << 32) | (start & 0xFFFFFFFFL);
+    }
+
+    private static class Done {
+        private final int end;
+        private final int matchCounter;
+        private final int articlesHaveMatch;
+
+        private Done(int end, int matchCounter, int articlesHaveMatch) {
+            this.end = end;
+            this.matchCounter = matchCounter;
+            this.articlesHaveMatch = articlesHaveMatch;
+        }
+    }
+}
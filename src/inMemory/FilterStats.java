@@ -0,0 +1,82 @@
+package inMemory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of the (text, title) pairs seen by TitleMatcher, and of the ones each filter rejected
+ * Shared by the RefMatcher threads, each text adds its counts once
+ */
+public class FilterStats {
+    private final LongAdder pairs = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder anchorRejected = new LongAdder();
+    private final LongAdder lengthRejected = new LongAdder();
+    private final LongAdder signatureRejected = new LongAdder();
+    private final LongAdder histogramRejected = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder packed = new LongAdder();
+
+    /**
+     * Add the counts of a text
+     *
+     * @param pairs titles the text is matched against
+     * @param duplicates titles answered by the pattern of an identical title
+     * @param anchorRejected indexed titles whose q-grams aren't in the text
+     * @param lengthRejected candidates longer than the text
+     * @param signatureRejected candidates with too many characters missing from the text
+     * @param histogramRejected candidates with too many occurrences missing from the text
+     * @param verified candidates verified with Bitap
+     * @param packed titles matched with the MultiBitap, without filter
+     */
+    public void add(int pairs, int duplicates, int anchorRejected, int lengthRejected, int signatureRejected, int histogramRejected,
+                    int verified, int packed) {
+        this.pairs.add(pairs);
+        this.duplicates.add(duplicates);
+        this.anchorRejected.add(anchorRejected);
+        this.lengthRejected.add(lengthRejected);
+        this.signatureRejected.add(signatureRejected);
+        this.histogramRejected.add(histogramRejected);
+        this.verified.add(verified);
+        this.packed.add(packed);
+    }
+
+    public long getPairs() {
+        return pairs.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getAnchorRejected() {
+        return anchorRejected.sum();
+    }
+
+    public long getLengthRejected() {
+        return lengthRejected.sum();
+    }
+
+    public long getSignatureRejected() {
+        return signatureRejected.sum();
+    }
+
+    public long getHistogramRejected() {
+        return histogramRejected.sum();
+    }
+
+    public long getVerified() {
+        return verified.sum();
+    }
+
+    public long getPacked() {
+        return packed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Pairs: " + getPairs() + "    Duplicates: " + getDuplicates() + "    Rejected by anchor: " + getAnchorRejected()
+                + "    by length: " + getLengthRejected() + "    by signature: " + getSignatureRejected()
+                + "    by histogram: " + getHistogramRejected() + "    Verified: " + getVerified()
+                + "    Packed: " + getPacked();
+    }
+}
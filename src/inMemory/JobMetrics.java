@@ -0,0 +1,373 @@
+package inMemory;
+
+import bitap.EngineStats;
+import db.ArticleLoader;
+import db.LinkWriter;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a matching job, to tell whether a long run is I/O-bound (loading, link queue full),
+ * CPU-bound (busy threads, Bitap time) or stuck (no progress between two lines of the log)
+ *
+ * The metrics are exposed three ways:
+ * - a progress line every few seconds, with the rates over the last interval
+ * - an MBean, inMemory:type=JobMetrics
+ * - a JSON summary written at the end of the job
+ *
+ * The Bitap calls and times come from EngineStats. The calls are always counted, the times are only
+ * measured with timed engines, they are 0 otherwise
+ * The busy time of a thread is the time it spent in RefMatchers, the rest of the matching phase it was idle
+ */
+public class JobMetrics implements JobMetricsMBean {
+    private final long startNanos = System.nanoTime();
+    private volatile String phase = "starting";
+    private volatile long loadingNanos;
+    private volatile long loadedNanos;
+    private volatile long matchingNanos;
+    private volatile long matchedNanos;
+
+    // Sources of the metrics, null until the job uses them
+    private volatile ArticleLoader loader;
+    private volatile LinkWriter linkWriter;
+    private volatile FilterStats filterStats;
+
+    private volatile int articlesLoaded;
+    private volatile long articlesToMatch;
+    private final LongAdder articlesMatched = new LongAdder();
+
+    // Nanoseconds spent in RefMatchers, by thread name
+    private final Map<String, LongAdder> busyNanos = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService progressLog;
+
+    public JobMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param timedEngines if set, the time spent in each Bitap engine is measured too, see EngineStats
+     */
+    public JobMetrics(boolean timedEngines) {
+        EngineStats.setEnabled(true);
+        EngineStats.setTimed(timedEngines);
+    }
+
+    public void setLoader(ArticleLoader loader) {
+        this.loader = loader;
+    }
+
+    public void setLinkWriter(LinkWriter linkWriter) {
+        this.linkWriter = linkWriter;
+    }
+
+    public void setFilterStats(FilterStats filterStats) {
+        this.filterStats = filterStats;
+    }
+
+    public void startLoading() {
+        loadingNanos = System.nanoTime();
+        phase = "loading";
+    }
+
+    /**
+     * @param articlesLoaded number of rows read
+     */
+    public void endLoading(int articlesLoaded) {
+        this.articlesLoaded = articlesLoaded;
+        loadedNanos = System.nanoTime();
+        loader = null;
+    }
+
+    /**
+     * @param articlesToMatch number of citing articles to be matched
+     */
+    public void startMatching(long articlesToMatch) {
+        this.articlesToMatch = articlesToMatch;
+        matchingNanos = System.nanoTime();
+        phase = "matching";
+    }
+
+    public void endMatching() {
+        matchedNanos = System.nanoTime();
+        phase = "writing";
+    }
+
+    /**
+     * Called by a RefMatcher once it matched a range of articles
+     *
+     * @param numOfArticles articles in the range
+     * @param nanos time it took
+     */
+    public void addMatched(int numOfArticles, long nanos) {
+        articlesMatched.add(numOfArticles);
+        busyNanos.computeIfAbsent(Thread.currentThread().getName(), name -> new LongAdder()).add(nanos);
+    }
+
+    /**
+     * Register the MBean, a failure is reported but doesn't stop the job
+     *
+     * @param name value of the type key, e.g. JobMetrics
+     */
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("inMemory:type=" + name));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Print a progress line every interval, on a daemon thread
+     */
+    public void startProgressLog(long intervalSeconds) {
+        progressLog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long[] last = new long[3];
+        progressLog.scheduleAtFixedRate(() -> {
+            long loaded = getArticlesLoaded(), matched = getArticlesMatched(), calls = getBitapCalls();
+            System.out.println(String.format(Locale.ROOT, "[%ds] %s    loaded: %d (%.0f/s)    queued pages: %d"
+                            + "    matched: %d/%d (%.0f/s)    Bitap: %d calls (%.0f/s)    link queue: %d    busy: %.0f%%",
+                    getElapsedSeconds(), phase, loaded, (loaded - last[0]) / (double) intervalSeconds, getLoaderQueueDepth(),
+                    matched, articlesToMatch, (matched - last[1]) / (double) intervalSeconds,
+                    calls, (calls - last[2]) / (double) intervalSeconds, getLinkQueueDepth(), 100 * getBusyRatio()));
+            last[0] = loaded;
+            last[1] = matched;
+            last[2] = calls;
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the progress log, and write the summary
+     *
+     * @param file JSON summary to be written
+     */
+    public void finish(File file) throws IOException {
+        phase = "done";
+        if (progressLog != null) {
+            progressLog.shutdown();
+        }
+
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(toJson());
+        }
+    }
+
+    @Override
+    public String getPhase() {
+        return phase;
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getArticlesLoaded() {
+        ArticleLoader current = loader;
+        return current != null ? current.getNumOfRows() : articlesLoaded;
+    }
+
+    @Override
+    public double getArticlesLoadedPerSecond() {
+        return perSecond(getArticlesLoaded(), loadingNanos, loadedNanos);
+    }
+
+    @Override
+    public int getLoaderQueueDepth() {
+        ArticleLoader current = loader;
+        return current != null ? current.getNumOfPendingPages() : 0;
+    }
+
+    @Override
+    public long getArticlesToMatch() {
+        return articlesToMatch;
+    }
+
+    @Override
+    public long getArticlesMatched() {
+        return articlesMatched.sum();
+    }
+
+    @Override
+    public double getArticlesMatchedPerSecond() {
+        return perSecond(getArticlesMatched(), matchingNanos, matchedNanos);
+    }
+
+    @Override
+    public long getBitapCalls() {
+        return EngineStats.getCalls();
+    }
+
+    @Override
+    public double getBitapCallsPerSecond() {
+        return perSecond(getBitapCalls(), matchingNanos, matchedNanos);
+    }
+
+    @Override
+    public long getBitapLongMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(EngineStats.getNanos(EngineStats.Kind.LONG));
+    }
+
+    @Override
+    public long getBitapExtendedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(EngineStats.getNanos(EngineStats.Kind.EXTENDED));
+    }
+
+    @Override
+    public long getBitapMyersMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(EngineStats.getNanos(EngineStats.Kind.MYERS));
+    }
+
+    @Override
+    public long getMultiBitapMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(EngineStats.getNanos(EngineStats.Kind.MULTI));
+    }
+
+    @Override
+    public double getFilterRejectionRate() {
+        FilterStats stats = filterStats;
+        if (stats == null || stats.getPairs() == 0) {
+            return 0;
+        }
+        long rejected = stats.getAnchorRejected() + stats.getLengthRejected() + stats.getSignatureRejected()
+                + stats.getHistogramRejected();
+        return rejected / (double) stats.getPairs();
+    }
+
+    @Override
+    public int getLinkQueueDepth() {
+        LinkWriter current = linkWriter;
+        return current != null ? current.getQueueSize() : 0;
+    }
+
+    @Override
+    public double getBusyRatio() {
+        long elapsed = elapsed(matchingNanos, matchedNanos);
+        if (elapsed == 0 || busyNanos.isEmpty()) {
+            return 0;
+        }
+        long busy = 0;
+        for (LongAdder nanos : busyNanos.values()) {
+            busy += nanos.sum();
+        }
+        return busy / ((double) elapsed * busyNanos.size());
+    }
+
+    @Override
+    public String[] getThreads() {
+        Map<String, double[]> threads = threadMetrics();
+        String[] lines = new String[threads.size()];
+        int i = 0;
+        for (Map.Entry<String, double[]> thread : threads.entrySet()) {
+            double[] metrics = thread.getValue();
+            lines[i++] = String.format(Locale.ROOT, "%s    busy: %.0f ms    idle: %.0f ms    Bitap: %.0f calls (%.0f/s)",
+                    thread.getKey(), metrics[0], metrics[1], metrics[2], metrics[3]);
+        }
+        return lines;
+    }
+
+    // Busy ms, idle ms, Bitap calls and calls per second of each matching thread
+    private Map<String, double[]> threadMetrics() {
+        long elapsed = elapsed(matchingNanos, matchedNanos);
+        Map<String, Long> calls = EngineStats.getCallsPerThread();
+        Map<String, double[]> threads = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> thread : busyNanos.entrySet()) {
+            long busy = thread.getValue().sum();
+            long threadCalls = calls.getOrDefault(thread.getKey(), 0L);
+            threads.put(thread.getKey(), new double[]{busy / 1e6, Math.max(0, elapsed - busy) / 1e6, threadCalls,
+                    elapsed == 0 ? 0 : threadCalls / (elapsed / 1e9)});
+        }
+        return threads;
+    }
+
+    private String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"elapsedSeconds\": ").append(getElapsedSeconds()).append(",\n");
+        json.append("  \"loading\": {\"articles\": ").append(getArticlesLoaded())
+                .append(", \"seconds\": ").append(seconds(loadingNanos, loadedNanos))
+                .append(", \"articlesPerSecond\": ").append(number(getArticlesLoadedPerSecond())).append("},\n");
+        json.append("  \"matching\": {\"articles\": ").append(getArticlesMatched())
+                .append(", \"seconds\": ").append(seconds(matchingNanos, matchedNanos))
+                .append(", \"articlesPerSecond\": ").append(number(getArticlesMatchedPerSecond()))
+                .append(", \"busyRatio\": ").append(number(getBusyRatio())).append("},\n");
+
+        json.append("  \"bitap\": {\"calls\": ").append(getBitapCalls())
+                .append(", \"callsPerSecond\": ").append(number(getBitapCallsPerSecond()));
+        for (EngineStats.Kind kind : EngineStats.Kind.values()) {
+            json.append(", \"").append(kind.name().toLowerCase(Locale.ROOT)).append("\": {\"calls\": ")
+                    .append(EngineStats.getCalls(kind));
+            if (EngineStats.isTimed()) {
+                json.append(", \"millis\": ").append(TimeUnit.NANOSECONDS.toMillis(EngineStats.getNanos(kind)));
+            }
+            json.append('}');
+        }
+        json.append("},\n");
+
+        FilterStats stats = filterStats;
+        if (stats != null) {
+            json.append("  \"filters\": {\"pairs\": ").append(stats.getPairs())
+                    .append(", \"duplicates\": ").append(stats.getDuplicates())
+                    .append(", \"anchorRejected\": ").append(stats.getAnchorRejected())
+                    .append(", \"lengthRejected\": ").append(stats.getLengthRejected())
+                    .append(", \"signatureRejected\": ").append(stats.getSignatureRejected())
+                    .append(", \"histogramRejected\": ").append(stats.getHistogramRejected())
+                    .append(", \"verified\": ").append(stats.getVerified())
+                    .append(", \"rejectionRate\": ").append(number(getFilterRejectionRate())).append("},\n");
+        }
+
+        json.append("  \"threads\": [");
+        String separator = "\n";
+        for (Map.Entry<String, double[]> thread : threadMetrics().entrySet()) {
+            double[] metrics = thread.getValue();
+            json.append(separator).append("    {\"name\": \"").append(thread.getKey())
+                    .append("\", \"busyMillis\": ").append(Math.round(metrics[0]))
+                    .append(", \"idleMillis\": ").append(Math.round(metrics[1]))
+                    .append(", \"bitapCalls\": ").append(Math.round(metrics[2]))
+                    .append(", \"bitapCallsPerSecond\": ").append(number(metrics[3])).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    // Time from start to end, or to now if the phase isn't over, 0 if it didn't start
+    private static long elapsed(long start, long end) {
+        if (start == 0) {
+            return 0;
+        }
+        return (end != 0 ? end : System.nanoTime()) - start;
+    }
+
+    private static double perSecond(long count, long start, long end) {
+        long elapsed = elapsed(start, end);
+        return elapsed == 0 ? 0 : count / (elapsed / 1e9);
+    }
+
+    private static String seconds(long start, long end) {
+        return number(elapsed(start, end) / 1e9);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,42 @@
+package inMemory;
+
+/**
+ * Management interface of JobMetrics, see JConsole or VisualVM under inMemory:type=JobMetrics
+ */
+public interface JobMetricsMBean {
+    String getPhase();
+
+    long getElapsedSeconds();
+
+    long getArticlesLoaded();
+
+    double getArticlesLoadedPerSecond();
+
+    int getLoaderQueueDepth();
+
+    long getArticlesToMatch();
+
+    long getArticlesMatched();
+
+    double getArticlesMatchedPerSecond();
+
+    long getBitapCalls();
+
+    double getBitapCallsPerSecond();
+
+    long getBitapLongMillis();
+
+    long getBitapExtendedMillis();
+
+    long getBitapMyersMillis();
+
+    long getMultiBitapMillis();
+
+    double getFilterRejectionRate();
+
+    int getLinkQueueDepth();
+
+    double getBusyRatio();
+
+    String[] getThreads();
+}
@@ -0,0 +1,227 @@
+package inMemory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the titles matched by a text, see TitleMatcher.setCache
+ * The same references show up in many articles (duplicated reference blocks, copied entries),
+ * they are matched once
+ *
+ * The texts are kept as a 128-bit hash and their length, not as strings
+ * The least recently used entries are evicted once the cache holds maxEntries texts
+ *
+ * The cache can be saved to a file and loaded by the next run. The results are indices of titles,
+ * so the file records the number of titles and their fingerprint (TitleMatcher.fingerprint). It is loaded as long as
+ * these titles are still the first ones: the titles appended since, e.g. by an incremental run, aren't in its entries,
+ * each entry records how many titles it covers and TitleMatcher matches the text against the others
+ */
+public class MatchCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 17;
+
+    private static final int MAGIC = 0x4C524D43;  // "LRMC"
+    private static final int VERSION = 2;
+
+    private final int maxEntries;
+    private final Map<Key, Entry> entries;
+
+    private long hits;
+    private long misses;
+
+    public MatchCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, MatchCache.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MatchCache.Entry> eldest) {
+                return size() > MatchCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Hash a text, the key of its entry
+     */
+    public static Key key(CharSequence text) {
+        // Two independent 64-bit polynomial hashes, finalized as in MurmurHash3
+        long high = 0x9E3779B97F4A7C15L, low = 0xC2B2AE3D27D4EB4FL;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            high = (high + c) * 0xFF51AFD7ED558CCDL;
+            low = (low ^ c) * 0xC4CEB9FE1A85EC53L;
+        }
+        return new Key(mix(high), mix(low), text.length());
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * @return the matched titles of the text, null if it isn't cached
+     */
+    public synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            ++misses;
+        } else {
+            ++hits;
+        }
+        return entry;
+    }
+
+    /**
+     * @param matched the titles matched by the text
+     * @param numOfTitles the titles [0, numOfTitles) it was matched against
+     */
+    public synchronized void put(Key key, int[] matched, int numOfTitles) {
+        entries.put(key, new Entry(matched, numOfTitles));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Save the entries, from the least to the most recently used
+     *
+     * @param file to be written
+     * @param titles the matcher the entries were matched with
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void save(File file, TitleMatcher titles) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(titles.numOfTitles());
+            output.writeLong(titles.fingerprint());
+            output.writeInt(entries.size());
+
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                Key key = entry.getKey();
+                output.writeLong(key.high);
+                output.writeLong(key.low);
+                output.writeInt(key.length);
+
+                Entry matched = entry.getValue();
+                output.writeInt(matched.numOfTitles);
+                output.writeInt(matched.titles.length);
+                for (int title : matched.titles) {
+                    output.writeInt(title);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the entries saved by a previous run
+     * The file is ignored if it doesn't exist, or if the titles it was saved for aren't the first ones of the matcher
+     *
+     * @param file written by save
+     * @param titles the current matcher, holding the same titles or more titles appended to them
+     * @return the number of entries loaded
+     * @throws IOException if the file can't be read
+     */
+    public synchronized int load(File file, TitleMatcher titles) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return 0;
+            }
+            int numOfTitles = input.readInt();
+            if (numOfTitles > titles.numOfTitles() || input.readLong() != titles.fingerprint(numOfTitles)) {
+                return 0;
+            }
+
+            int numOfEntries = input.readInt();
+            for (int i = 0; i < numOfEntries; ++i) {
+                Key key = new Key(input.readLong(), input.readLong(), input.readInt());
+                int entryTitles = input.readInt();
+                int[] matched = new int[input.readInt()];
+                for (int j = 0; j < matched.length; ++j) {
+                    matched[j] = input.readInt();
+                }
+                entries.put(key, new Entry(matched, entryTitles));
+            }
+            return numOfEntries;
+        }
+    }
+
+    /**
+     * The titles matched by a cached text
+     */
+    public static class Entry {
+        private final int[] titles;
+        private final int numOfTitles;
+
+        private Entry(int[] titles, int numOfTitles) {
+            this.titles = titles;
+            this.numOfTitles = numOfTitles;
+        }
+
+        /**
+         * @return the indices of the matched titles
+         */
+        public int[] getTitles() {
+            return titles;
+        }
+
+        /**
+         * @return the number of titles the text was matched against, the first ones
+         */
+        public int getNumOfTitles() {
+            return numOfTitles;
+        }
+    }
+
+    /**
+     * A cached text
+     */
+    public static class Key {
+        private final long high;
+        private final long low;
+        private final int length;
+
+        private Key(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return high == other.high && low == other.low && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (high ^ (high >>> 32));
+        }
+    }
+}
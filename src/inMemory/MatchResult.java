@@ -0,0 +1,38 @@
+package inMemory;
+
+/**
+ * Counters of matching a range of articles
+ * The report and the links themselves are streamed to a ResultWriter and a LinkSink
+ */
+public class MatchResult {
+    private int matchCounter;
+    private int articlesHaveMatch;
+
+    public MatchResult() {
+    }
+
+    public MatchResult(int matchCounter, int articlesHaveMatch) {
+        this.matchCounter = matchCounter;
+        this.articlesHaveMatch = articlesHaveMatch;
+    }
+
+    /**
+     * Add the result of another range
+     *
+     * @param next result of the other range
+     * @return this
+     */
+    public MatchResult merge(MatchResult next) {
+        matchCounter += next.matchCounter;
+        articlesHaveMatch += next.articlesHaveMatch;
+        return this;
+    }
+
+    public int getMatchCounter() {
+        return matchCounter;
+    }
+
+    public int getArticlesHaveMatch() {
+        return articlesHaveMatch;
+    }
+}
@@ -1,22 +1,46 @@
 package inMemory;
 
 import bitap.Bitap;
+import bitap.BitapPattern;
 import data.Article;
+import data.ArticleCorpus;
+import data.Corpus;
+import data.CorpusStore;
 import data.References;
-import util.StringUtl;
+import db.ArticleLoader;
+import db.LinkSink;
+import db.LinkWriter;
+import db.Watermark;
+import gnu.trove.list.array.TIntArrayList;
+import index.CitationGraph;
+import index.ReferenceIndex;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class ReferenceMatcher {
     private static final int NUM_OF_THREAD = Runtime.getRuntime().availableProcessors();
+
+    // Ranges of at most CHUNK_SIZE articles are matched sequentially by a single task
+    private static final int CHUNK_SIZE = 16;
+
+    // Seconds between two lines of the progress log
+    private static final int PROGRESS_INTERVAL = 10;
+
+    // The reference index is rebuilt once the articles it doesn't hold are more than 1 / REINDEX_RATIO of it
+    private static final int REINDEX_RATIO = 16;
+
+    // The DB, unless --jdbc-url is given
+    private static final String DEFAULT_JDBC_URL = "jdbc:mysql://localhost/vci_scholar?user=root&password=&rewriteBatchedStatements=true";
     static {
         try {
             Bitap.class.newInstance();
@@ -27,83 +51,332 @@ public class ReferenceMatcher {
         }
     }
 
+    // The articles loaded from the DB, null if they are read from a CorpusStore
     private static ArrayList<Article> articles;
 
-    // temp array to store results
-    private static String[] tempResults = new String[NUM_OF_THREAD];
-    private static int[] tempMatchCounters = new int[NUM_OF_THREAD];
-    private static int[] tempArticlesHaveMatch = new int[NUM_OF_THREAD];
+    // The titles and raw references of the articles, in order of id
+    static Corpus corpus;
+
+    // titlePatterns.get(i) is the compiled title of corpus.getTitle(i)
+    private static ArrayList<BitapPattern> titlePatterns;
+
+    // Finds the titles contained by a raw reference without trying all of them
+    private static TitleMatcher titleMatcher;
+
+    // If set, titles matched within the occurrence of a better one are dropped, see TitleMatcher.resolveOverlaps
+    static boolean resolveOverlaps;
+
+    // Receives the links found by the RefMatchers: a LinkWriter, or the ShardResult of a ShardWorker
+    static LinkSink linkWriter;
+
+    // Receives the report and the table of the links found by the RefMatchers
+    static ResultWriter resultWriter;
+
+    // Progress of the job, null if it isn't measured
+    static JobMetrics metrics;
+
+    // Records the chunks as they are matched, null if the run can't be resumed
+    private static Checkpoint checkpoint;
 
     public static void main(String[] args) throws SQLException, IOException {
         long start = System.currentTimeMillis();
 
-        // Connect to the DB
-        Connection connection = null;
-        try {
-            Class.forName("com.mysql.jdbc.Driver").newInstance();
-            connection = DriverManager.getConnection("jdbc:mysql://localhost/test?user=root&password=");
-        } catch (Exception ex) {
-            // whoohoo what a broken implementation
+        // Arguments: [--jdbc-url <url>] [--incremental] [--fold] [--resolve-overlaps] [--corpus <file> | --save-corpus <file>]
+        //            [--cache-file <file>] [--coordinator <dir> [--workers <n>] [--shard-size <n>]]
+        //            [--graph <file>] [--checkpoint <file>] [--reference-index <file>] [--engine-timings] [limit]
+        // With --jdbc-url, the articles are read from and the links written to this DB instead of the local MySQL one,
+        // any JDBC database whose driver is on the classpath, e.g. jdbc:h2:<file>
+        // With --incremental, only the articles added since the last run are linked, see Watermark
+        // With --fold, diacritics and punctuation are folded before matching, see StringUtl.fold
+        // With --resolve-overlaps, only the best of the titles matched in the same part of a reference is linked
+        // With --corpus, the articles are mapped from a CorpusStore instead of being read from the DB
+        // With --save-corpus, the articles read from the DB are saved into a CorpusStore for the next runs
+        // With --cache-file, the results of the references are saved for the next runs, see MatchCache
+        // With --coordinator, the articles are matched in shards by ShardWorker processes sharing the directory,
+        // --workers of them are started on this machine, see ShardCoordinator
+        // With --graph, the links found are also saved as a CitationGraph. With --incremental, the links between
+        // the old articles are kept from the graph saved by the previous runs, which must hold all of them
+        // With --checkpoint, the matched chunks are logged to the file, and a run which died is resumed from it,
+        // see Checkpoint. Not with --coordinator, the workers already keep the shards they matched
+        // With --reference-index, an incremental run looks the new titles up in a ReferenceIndex of the old references,
+        // and only matches the old articles which may cite them. The index is (re)built at the end of the run when
+        // it is missing, stale, or lacks too many articles. If it can't be built, e.g. the references are too long
+        // or don't fit in memory, the runs go on without it. Ignored with --coordinator
+        // With --engine-timings, the time spent in each Bitap engine is measured, at the cost of two System.nanoTime()
+        // per call. Without it only the calls are counted
+        // The whole table is read, unless a limit is given
+        String jdbcUrl = DEFAULT_JDBC_URL;
+        boolean incremental = false;
+        boolean fold = false;
+        File corpusFile = null;
+        boolean saveCorpus = false;
+        File cacheFile = null;
+        File shardDirectory = null;
+        int numOfWorkers = 0;
+        int shardSize = ShardCoordinator.DEFAULT_SHARD_SIZE;
+        File graphFile = null;
+        File checkpointFile = null;
+        File referenceIndexFile = null;
+        boolean engineTimings = false;
+        int limit = Integer.MAX_VALUE;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--jdbc-url")) {
+                jdbcUrl = args[++i];
+            } else if (args[i].equals("--incremental")) {
+                incremental = true;
+            } else if (args[i].equals("--fold")) {
+                fold = true;
+            } else if (args[i].equals("--resolve-overlaps")) {
+                resolveOverlaps = true;
+            } else if (args[i].equals("--corpus") || args[i].equals("--save-corpus")) {
+                saveCorpus = args[i].equals("--save-corpus");
+                corpusFile = new File(args[++i]);
+            } else if (args[i].equals("--cache-file")) {
+                cacheFile = new File(args[++i]);
+            } else if (args[i].equals("--coordinator")) {
+                shardDirectory = new File(args[++i]);
+            } else if (args[i].equals("--workers")) {
+                numOfWorkers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--shard-size")) {
+                shardSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--graph")) {
+                graphFile = new File(args[++i]);
+            } else if (args[i].equals("--checkpoint")) {
+                checkpointFile = new File(args[++i]);
+            } else if (args[i].equals("--reference-index")) {
+                referenceIndexFile = new File(args[++i]);
+            } else if (args[i].equals("--engine-timings")) {
+                engineTimings = true;
+            } else {
+                limit = Integer.parseInt(args[i]);
+            }
         }
 
-        Statement statement = connection.createStatement();
-        statement.executeQuery("USE vci_scholar");
+        Connection connection = connect(jdbcUrl);
+        Watermark watermark = new Watermark(connection);
+        watermark.createTable();
+        int lastLinkedId = incremental ? watermark.read() : Watermark.NONE;
+
+        // Logged every PROGRESS_INTERVAL seconds, exposed through JMX, and summarized in metrics.json
+        metrics = new JobMetrics(engineTimings);
+        metrics.register("JobMetrics");
+        metrics.startProgressLog(PROGRESS_INTERVAL);
+        metrics.startLoading();
+
+        titlePatterns = new ArrayList<>();
+        int lastId;
+        if (corpusFile != null && !saveCorpus) {
+            // The store holds cleaned texts already, only the titles are compiled
+            CorpusStore store = CorpusStore.open(corpusFile);
+            corpus = store;
+            metrics.endLoading(store.size());
+            titlePatterns = compileTitles(store);
+            lastId = store.size() > 0 ? store.getId(store.size() - 1) : Watermark.NONE;
+        } else {
+            // Stream the articles, they are cleaned and their titles compiled while the next pages are read
+            articles = new ArrayList<>();
+            ArticleLoader loader = new ArticleLoader(connection);
+            loader.setLimit(limit);
+            loader.setFold(fold);
+            metrics.setLoader(loader);
+            loader.load(articles, titlePatterns);
+            metrics.endLoading(loader.getNumOfRows());
+            corpus = new ArticleCorpus(articles);
+            lastId = loader.getLastId();
 
-        ResultSet articleSet = statement.executeQuery("SELECT id, title, reference FROM articles LIMIT 12345");
-        articleSet.last();
-        articles = new ArrayList<>(articleSet.getRow());
-        articleSet.beforeFirst();
+            if (saveCorpus) {
+                CorpusStore.write(corpusFile, corpus);
+            }
+        }
 
-        // Read the received ResultSet
-        while (articleSet.next()) {
-            String rawReference = articleSet.getString(3);
+        // The titles are matched against every raw reference
+        titleMatcher = new TitleMatcher(titlePatterns);
 
-            // Only create an Article if the raw reference string is valuable
-            if (rawReference != null && rawReference.length() != 0) {
-                Article article = new Article();
+        // Duplicated references are matched once
+        MatchCache cache = new MatchCache(MatchCache.DEFAULT_MAX_ENTRIES);
+        if (cacheFile != null) {
+            cache.load(cacheFile, titleMatcher);
+        }
+        titleMatcher.setCache(cache);
 
-                article.setId(articleSet.getInt(1));
-                article.setTitle(StringUtl.clean(articleSet.getString(2)));
-                article.setReferences(new References(StringUtl.clean(rawReference)));
+        // How many of the (reference, title) pairs each filter prunes before Bitap
+        FilterStats filterStats = new FilterStats();
+        titleMatcher.setStats(filterStats);
+        metrics.setFilterStats(filterStats);
 
-                articles.add(article);
+        // The articles are sorted by id, the new ones are at the end
+        int firstNew = 0;
+        if (lastLinkedId != Watermark.NONE) {
+            while (firstNew < corpus.size() && corpus.getId(firstNew) <= lastLinkedId) {
+                ++firstNew;
             }
         }
 
-        // Match
-        ExecutorService refMatchers = Executors.newFixedThreadPool(NUM_OF_THREAD);
-        int size = articles.size() / NUM_OF_THREAD, startIdx, endIdx;
-        for (int i = 0; i < NUM_OF_THREAD; i++) {
-            startIdx = i * size;
-            endIdx = startIdx + size;
-            endIdx = endIdx > articles.size() ? articles.size() : endIdx;
-            refMatchers.execute(new RefMatcher(startIdx, endIdx));
+        // The links are also collected in memory, in per-thread primitive buffers
+        CitationGraph.Builder graphBuilder = null;
+        if (graphFile != null) {
+            int[] ids = new int[corpus.size()];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = corpus.getId(i);
+            }
+            graphBuilder = new CitationGraph.Builder(ids);
+
+            // An incremental run doesn't find the links between the old articles again, they are taken from
+            // the graph of the previous runs, which must hold all the old articles
+            if (lastLinkedId != Watermark.NONE) {
+                CitationGraph previous = graphFile.exists() ? CitationGraph.read(graphFile) : null;
+                for (int i = 0; i < firstNew; ++i) {
+                    if (previous == null || previous.indexOf(corpus.getId(i)) < 0) {
+                        throw new IOException("No up-to-date graph of the old articles in " + graphFile
+                                + ", --graph needs a full run first");
+                    }
+                }
+                if (previous != null) {
+                    graphBuilder.addAll(previous, lastLinkedId);
+                }
+            }
         }
 
-        // (Wait) Till the end
-        refMatchers.shutdown();
-        try {
-            refMatchers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        // The links are written to the DB by a dedicated thread, on its own connection
+        LinkWriter writer = new LinkWriter(connect(jdbcUrl));
+        linkWriter = writer;
+        writer.createTable();
+        if (lastLinkedId == Watermark.NONE) {
+            writer.clear();
+        } else {
+            writer.deleteAfter(lastLinkedId);
+        }
+        writer.start();
+        metrics.setLinkWriter(writer);
+
+        if (graphBuilder != null) {
+            linkWriter = LinkSink.both(writer, graphBuilder);
         }
 
-        // Print the result
-        StringBuilder results = new StringBuilder("");
-        int matchCounter = 0, articlesHaveMatch = 0;
-        for (int i = 0; i < NUM_OF_THREAD; ++i) {
-            results.append(tempResults[i]);
-            matchCounter += tempMatchCounters[i];
-            articlesHaveMatch += tempArticlesHaveMatch[i];
+        // The report and the table of the links are streamed to files as the chunks are matched
+        File reportFile = new File("results.txt");
+        resultWriter = new ResultWriter(reportFile, new File("links.tsv"));
+        resultWriter.setTableHeader(ResultWriter.TABLE_HEADER);
+
+        // The chunks matched by a previous run of the same job are replayed, then skipped
+        if (checkpointFile != null && shardDirectory == null) {
+            checkpoint = new Checkpoint(checkpointFile,
+                    Checkpoint.jobKey(corpus, titleMatcher.fingerprint(), firstNew, resolveOverlaps));
+            int numOfChunks = checkpoint.resume(resultWriter, linkWriter);
+            if (numOfChunks > 0) {
+                System.out.println("Resumed " + numOfChunks + " chunks from " + checkpointFile);
+            }
+        }
+
+        // Only valid if it holds the references of the first articles as they are now
+        // The workers of a coordinator match all the old articles, they don't look the titles up
+        ReferenceIndex referenceIndex = null;
+        if (referenceIndexFile != null && referenceIndexFile.exists() && shardDirectory == null) {
+            referenceIndex = ReferenceIndex.open(referenceIndexFile);
+            if (!referenceIndex.isValidFor(corpus)) {
+                referenceIndex.close();
+                referenceIndex = null;
+            }
+        }
+
+        // Match
+        // The ranges are split in chunks, idle threads steal the chunks of the busy ones
+        ForkJoinPool refMatchers = new ForkJoinPool(NUM_OF_THREAD);
+        metrics.startMatching(corpus.size());
+        MatchResult result;
+        if (shardDirectory != null) {
+            // Same ranges, in the same order, but matched by the workers
+            ShardCoordinator coordinator = new ShardCoordinator(new ShardDirectory(shardDirectory));
+            coordinator.setShardSize(shardSize);
+            coordinator.setNumOfWorkers(numOfWorkers);
+            coordinator.addRange(firstNew, corpus.size(), 0);
+            coordinator.addRange(0, firstNew, firstNew);
+            result = coordinator.run(corpus, corpusFile, resolveOverlaps, linkWriter, resultWriter);
+        } else if (lastLinkedId == Watermark.NONE) {
+            result = refMatchers.invoke(new RefMatcher(0, corpus.size()));
+        } else {
+            // The references of the new articles against all the titles,
+            // then the references of the old articles against the new titles only
+            // Links between old articles are left as they are
+            result = refMatchers.invoke(new RefMatcher(firstNew, corpus.size()));
+            TitleMatcher newTitleMatcher = new TitleMatcher(titlePatterns.subList(firstNew, titlePatterns.size()));
+            newTitleMatcher.setStats(filterStats);
+            BitSet citing = referenceIndex != null ? citingNewTitles(referenceIndex, firstNew) : null;
+            result.merge(refMatchers.invoke(new RefMatcher(0, firstNew, newTitleMatcher, firstNew, citing)));
+        }
+        refMatchers.shutdown();
+        metrics.endMatching();
+        resultWriter.close();
+        writer.close();
+        if (graphBuilder != null) {
+            graphBuilder.build().write(graphFile);
+        }
+        watermark.write(lastId);
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+        if (referenceIndexFile != null && shardDirectory == null) {
+            if (referenceIndex == null || corpus.size() - referenceIndex.size() > referenceIndex.size() / REINDEX_RATIO) {
+                // The links are saved already, the next runs match all the old articles without an index
+                try {
+                    ReferenceIndex.write(referenceIndexFile, corpus, corpus.size());
+                } catch (IOException | OutOfMemoryError e) {
+                    System.err.println("Cannot build the reference index " + referenceIndexFile + ": " + e);
+                }
+            }
+            if (referenceIndex != null) {
+                referenceIndex.close();
+            }
+        }
+        if (cacheFile != null) {
+            cache.save(cacheFile, titleMatcher);
         }
 
         long end = System.currentTimeMillis();
         System.out.println(end - start);
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(new File("results.txt")));
-        writer.write(results.toString());
-        writer.write("\nMatched references: " + matchCounter + "    Articles have match: " + articlesHaveMatch + "    Processing time: " + (end - start) + " ms    Thread: " + NUM_OF_THREAD);
-        writer.close();
+        BufferedWriter report = new BufferedWriter(new FileWriter(reportFile, true));
+        report.write("\nMatched references: " + result.getMatchCounter() + "    Articles have match: " + result.getArticlesHaveMatch() + "    Processing time: " + (end - start) + " ms    Thread: " + NUM_OF_THREAD + "    Cache hits: " + cache.getHits() + "    Cache misses: " + cache.getMisses());
+        report.write("\n" + filterStats);
+        report.close();
+        metrics.finish(new File("metrics.json"));
+    }
+
+    /**
+     * Find the old articles which may cite a new title, through a reference index of the old references
+     * The old articles which aren't in the index yet are all kept
+     *
+     * @param index valid for the corpus
+     * @param firstNew index of the first new article
+     */
+    private static BitSet citingNewTitles(ReferenceIndex index, int firstNew) {
+        BitSet citing = new BitSet(firstNew);
+        for (int title = firstNew; title < titlePatterns.size(); ++title) {
+            index.find(titlePatterns.get(title), citing);
+        }
+        citing.set(Math.min(index.size(), firstNew), firstNew);
+        return citing;
+    }
+
+    /**
+     * Compile the titles of a corpus, allowing 10% of errors
+     */
+    static ArrayList<BitapPattern> compileTitles(Corpus corpus) {
+        ArrayList<BitapPattern> patterns = new ArrayList<>(corpus.size());
+        for (int i = 0; i < corpus.size(); ++i) {
+            String title = corpus.getTitle(i).toString();
+            patterns.add(BitapPattern.compile(title, title.length() / 10));
+        }
+        return patterns;
+    }
+
+    /**
+     * Connect to the DB, the driver is found by DriverManager
+     *
+     * @throws SQLException if there is no driver for the URL or the DB can't be reached
+     */
+    private static Connection connect(String jdbcUrl) throws SQLException {
+        return DriverManager.getConnection(jdbcUrl);
     }
 
     public static int numOfRecords(Statement statement) throws SQLException {
@@ -124,60 +397,158 @@ public class ReferenceMatcher {
 
     /**
      * Iterate through a predefined range of the articles
-     * In each iteration, get its raw reference string, iterate over all the articles
-     * to find titles which are "contained" in the raw reference
-     * Just a crappy O(n^2) search
+     * Ranges longer than CHUNK_SIZE are split in halves and forked, the results are merged in order
+     * Each article of a chunk has its reference split into entries, and each entry is matched by the TitleMatcher
      *
      * The RefMatcher uses Bitap algorithm which enable fuzzy matching
      * String is marked as "contained" if it differs less than 10% to the most similar substring in the text
      * See Bitap class for more detail
      */
-    public static class RefMatcher implements Runnable {
+    public static class RefMatcher extends RecursiveTask<MatchResult> {
+        private static final long serialVersionUID = 1L;
+
         // The start and end indices of the search
         private int start;
         private int end;
 
+        // Matches the titles of corpus.getTitle(titleOffset) onwards
+        private TitleMatcher matcher;
+        private int titleOffset;
+
+        // The articles of the range worth matching, null for all of them
+        private BitSet candidates;
+
         public RefMatcher(int start, int end) {
+            this(start, end, titleMatcher, 0);
+        }
+
+        public RefMatcher(int start, int end, TitleMatcher matcher, int titleOffset) {
+            this(start, end, matcher, titleOffset, null);
+        }
+
+        /**
+         * @param candidates the articles of the range which may cite one of the titles, e.g. found by a ReferenceIndex,
+         *                   the other ones are skipped. Null if they must all be matched
+         */
+        public RefMatcher(int start, int end, TitleMatcher matcher, int titleOffset, BitSet candidates) {
             this.start = start;
             this.end = end;
+            this.matcher = matcher;
+            this.titleOffset = titleOffset;
+            this.candidates = candidates;
         }
 
         @Override
-        public void run() {
+        protected MatchResult compute() {
+            if (end - start > CHUNK_SIZE) {
+                int middle = (start + end) >>> 1;
+                RefMatcher left = new RefMatcher(start, middle, matcher, titleOffset, candidates);
+                left.fork();
+                MatchResult right = new RefMatcher(middle, end, matcher, titleOffset, candidates).compute();
+                return left.join().merge(right);
+            }
+
+            long startTime = System.nanoTime();
+            MatchResult done = checkpoint != null ? checkpoint.getDone(start, end, titleOffset) : null;
+            if (done != null) {
+                if (metrics != null) {
+                    metrics.addMatched(end - start, 0);
+                }
+                return done;
+            }
+
             int matchCounter = 0;
             int articleHasMatch = 0;
             StringBuilder result = new StringBuilder("");
+            StringBuilder table = new StringBuilder();
+            BitSet matched = new BitSet(corpus.size());
+            BitSet entryMatched = new BitSet(corpus.size());
+
+            // The titles cited by the current article, the entries citing them and their distance in the entry
+            TIntArrayList cited = new TIntArrayList();
+            TIntArrayList citingEntries = new TIntArrayList();
+            TIntArrayList distances = new TIntArrayList();
+
+            // The links of the chunk, for the checkpoint: citing id, number of cited ids, cited ids
+            TIntArrayList links = new TIntArrayList();
 
             for (int i = start; i < end; ++i) {
-                Article article = articles.get(i);
+                if (candidates != null && !candidates.get(i)) {
+                    continue;
+                }
+
                 boolean noCitFound = true;
-                String rawCitation = article.getReferences().getRaw();
-
-                for (Article citedArticle : articles) {
-                    // If 90% match
-                    if (Bitap.fuzzyContains(rawCitation, citedArticle.getTitle(), citedArticle.getTitle().length() / 10)) {
-                        if (noCitFound) {
-                            noCitFound = false;
-                            result.append(article.getTitle()).append(":\n").append(rawCitation).append("\n\n");
+                CharSequence rawCitation = corpus.getReference(i);
+
+                // Titles which 90% match, entry by entry
+                // A title cited by several entries is linked once, to the first one
+                matched.clear();
+                cited.resetQuick();
+                citingEntries.resetQuick();
+                distances.resetQuick();
+                List<CharSequence> entries = References.entries(rawCitation);
+                for (int e = 0; e < entries.size(); ++e) {
+                    entryMatched.clear();
+                    matcher.matchAll(entries.get(e), entryMatched);
+                    if (resolveOverlaps) {
+                        matcher.resolveOverlaps(entries.get(e), entryMatched);
+                    }
+
+                    for (int j = entryMatched.nextSetBit(0); j >= 0; j = entryMatched.nextSetBit(j + 1)) {
+                        if (!matched.get(j)) {
+                            matched.set(j);
+                            cited.add(titleOffset + j);
+                            citingEntries.add(e);
+                            distances.add(matcher.findBest(j, entries.get(e)).getDistance());
                         }
+                    }
+                }
 
-                        article.getReferences().addArticleID(citedArticle.getId());
-                        result.append("    ").append(citedArticle.getTitle()).append('\n');
-                        ++matchCounter;
+                int[] citedIds = new int[cited.size()];
+
+                for (int c = 0; c < cited.size(); ++c) {
+                    int citedId = corpus.getId(cited.get(c));
+                    citedIds[c] = citedId;
+
+                    if (noCitFound) {
+                        noCitFound = false;
+                        result.append(corpus.getTitle(i)).append(":\n").append(rawCitation).append("\n\n");
                     }
+
+                    // The entry is numbered from 1, as in the report
+                    result.append("    [").append(citingEntries.get(c) + 1).append("] ").append(corpus.getTitle(cited.get(c))).append('\n');
+                    table.append(corpus.getId(i)).append('\t').append(citedId).append('\t').append(citingEntries.get(c) + 1)
+                            .append('\t').append(distances.get(c)).append('\n');
+                    ++matchCounter;
                 }
 
                 if (!noCitFound) {
                     result.append("\n\n\n");
                     ++articleHasMatch;
                 }
+                linkWriter.add(corpus.getId(i), citedIds);
+                if (citedIds.length > 0) {
+                    links.add(corpus.getId(i));
+                    links.add(citedIds.length);
+                    links.add(citedIds);
+                }
             }
 
-            // Write result to temp arrays
-            int currentThreadIndex = (int) Thread.currentThread().getId() % NUM_OF_THREAD;
-            tempResults[currentThreadIndex] = result.toString();
-            tempMatchCounters[currentThreadIndex] = matchCounter;
-            tempArticlesHaveMatch[currentThreadIndex] = articleHasMatch;
+            // Only the results of a chunk are held in memory
+            resultWriter.write(start, result, table);
+
+            if (metrics != null) {
+                metrics.addMatched(end - start, System.nanoTime() - startTime);
+            }
+            MatchResult matchResult = new MatchResult(matchCounter, articleHasMatch);
+            if (checkpoint != null) {
+                try {
+                    checkpoint.add(start, end, titleOffset, matchResult, result, table, links);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return matchResult;
         }
     }
 }
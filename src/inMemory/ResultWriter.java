@@ -0,0 +1,251 @@
+package inMemory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stream the results of the RefMatchers to the human-readable report and to a table of the links
+ * (tab-separated citing_id, cited_id, entry, distance), without keeping them in memory
+ *
+ * Each thread appends the results of its chunks to its own spill files, through a direct buffer,
+ * and only the position of the chunk and the regions it wrote are kept. On close the regions are copied,
+ * channel to channel, into the final files in order of position, so the output doesn't depend on the scheduling
+ * The final files are written under another name then renamed, a reader never sees a partial output
+ * The spill files and the temporary files are next to the final ones, and end with .tmp
+ *
+ * Chunks may also be whole files, e.g. the outputs of the shards matched by ShardWorkers
+ */
+public class ResultWriter implements AutoCloseable {
+    public static final String TABLE_HEADER = "citing_id\tcited_id\tentry\tdistance\n";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File report;
+    private final File table;
+    private String tableHeader = "";
+
+    // The spill files of the threads, and the chunks written to them or to other files
+    private final ThreadLocal<Spill> spills = ThreadLocal.withInitial(this::newSpill);
+    private final List<Spill> allSpills = new ArrayList<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * @param report the human-readable report
+     * @param table the table of the links, null if it isn't written
+     */
+    public ResultWriter(File report, File table) {
+        this.report = report;
+        this.table = table;
+    }
+
+    /**
+     * @param tableHeader first line of the table, e.g. TABLE_HEADER
+     */
+    public void setTableHeader(String tableHeader) {
+        this.tableHeader = tableHeader;
+    }
+
+    /**
+     * Write the results of a chunk, from any thread
+     *
+     * @param position order of the chunk in the output, e.g. the index of its first article
+     * @param reportPart its lines of the report
+     * @param tablePart its rows of the table
+     */
+    public void write(int position, CharSequence reportPart, CharSequence tablePart) {
+        if (reportPart.length() == 0 && tablePart.length() == 0) {
+            return;
+        }
+
+        Spill spill = spills.get();
+        try {
+            long reportStart = spill.report.append(reportPart);
+            long tableStart = spill.table.append(tablePart);
+            addChunk(new Chunk(position, spill.report.file, reportStart, spill.report.size - reportStart,
+                    spill.table.file, tableStart, spill.table.size - tableStart));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the whole content of files as a chunk
+     *
+     * @param position order of the chunk in the output
+     * @param reportPart its lines of the report
+     * @param tablePart its rows of the table, null if there are none
+     */
+    public void write(int position, File reportPart, File tablePart) {
+        addChunk(new Chunk(position, reportPart, 0, reportPart.length(),
+                tablePart, 0, tablePart == null ? 0 : tablePart.length()));
+    }
+
+    /**
+     * Assemble the final files, and delete the spill files
+     * The writing threads must be done
+     */
+    @Override
+    public void close() throws IOException {
+        for (Spill spill : allSpills) {
+            spill.report.flush();
+            spill.table.flush();
+        }
+        chunks.sort(Comparator.comparingInt(chunk -> chunk.position));
+
+        try {
+            assemble(report, "", false);
+            if (table != null) {
+                assemble(table, tableHeader, true);
+            }
+        } finally {
+            for (Spill spill : allSpills) {
+                spill.report.close();
+                spill.table.close();
+            }
+        }
+    }
+
+    private void assemble(File output, String header, boolean ofTable) throws IOException {
+        File temp = tempFile(output);
+        Map<File, FileChannel> inputs = new HashMap<>();
+        try (FileChannel out = new RandomAccessFile(temp, "rw").getChannel()) {
+            out.truncate(0);
+            out.write(ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)));
+
+            for (Chunk chunk : chunks) {
+                File file = ofTable ? chunk.tableFile : chunk.reportFile;
+                long start = ofTable ? chunk.tableStart : chunk.reportStart;
+                long length = ofTable ? chunk.tableLength : chunk.reportLength;
+                if (length > 0) {
+                    FileChannel in = inputs.get(file);
+                    if (in == null) {
+                        in = new RandomAccessFile(file, "r").getChannel();
+                        inputs.put(file, in);
+                    }
+                    for (long copied = 0; copied < length; ) {
+                        copied += in.transferTo(start + copied, length - copied, out);
+                    }
+                }
+            }
+        } finally {
+            for (FileChannel in : inputs.values()) {
+                in.close();
+            }
+        }
+
+        Files.deleteIfExists(output.toPath());
+        if (!temp.renameTo(output)) {
+            throw new IOException("Cannot rename " + temp + " to " + output);
+        }
+    }
+
+    private synchronized void addChunk(Chunk chunk) {
+        chunks.add(chunk);
+    }
+
+    private synchronized Spill newSpill() {
+        try {
+            Spill spill = new Spill(new SpillFile(tempFile(report)), new SpillFile(tempFile(report)));
+            allSpills.add(spill);
+            return spill;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A new file next to the output, several writers may write the same output (e.g. a retried shard)
+    private static File tempFile(File output) throws IOException {
+        return File.createTempFile(output.getName() + ".", ".tmp", output.getAbsoluteFile().getParentFile());
+    }
+
+    private static class Spill {
+        private final SpillFile report;
+        private final SpillFile table;
+
+        private Spill(SpillFile report, SpillFile table) {
+            this.report = report;
+            this.table = table;
+        }
+    }
+
+    /**
+     * A file written by a single thread, through a direct buffer
+     */
+    private static class SpillFile {
+        private final File file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        // Bytes appended so far, flushed or not
+        private long size;
+
+        private SpillFile(File file) throws IOException {
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.channel.truncate(0);
+        }
+
+        /**
+         * @return the offset of the text in the file
+         */
+        private long append(CharSequence text) throws IOException {
+            long start = size;
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            for (int written = 0; written < bytes.length; ) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+            size += bytes.length;
+            return start;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void close() throws IOException {
+            channel.close();
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static class Chunk {
+        private final int position;
+        private final File reportFile;
+        private final long reportStart;
+        private final long reportLength;
+        private final File tableFile;
+        private final long tableStart;
+        private final long tableLength;
+
+        private Chunk(int position, File reportFile, long reportStart, long reportLength,
+                      File tableFile, long tableStart, long tableLength) {
+            this.position = position;
+            this.reportFile = reportFile;
+            this.reportStart = reportStart;
+            this.reportLength = reportLength;
+            this.tableFile = tableFile;
+            this.tableStart = tableStart;
+            this.tableLength = tableLength;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package inMemory;
+
+import data.Corpus;
+import data.CorpusStore;
+import db.LinkSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Split the citing articles in shards, have them matched by ShardWorker processes, and merge their results
+ * The coordinator and the workers share a ShardDirectory, the workers may run on this machine or on others
+ * mounting the same directory
+ *
+ * A shard is given to another worker when its worker fails, or stops its heartbeat for longer than the timeout
+ * (the process died or hangs). A shard failing MAX_ATTEMPTS times stops the run.
+ * The results are merged in order of shard, so the report and the links don't depend on which worker matched
+ * which shard, nor when
+ */
+public class ShardCoordinator {
+    public static final int DEFAULT_SHARD_SIZE = 1024;
+    public static final long DEFAULT_TIMEOUT = 60000;
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final long POLL_INTERVAL = 200;
+
+    private final ShardDirectory directory;
+    private final List<ShardDirectory.Shard> shards = new ArrayList<>();
+    private int shardSize = DEFAULT_SHARD_SIZE;
+    private long timeout = DEFAULT_TIMEOUT;
+    private int numOfWorkers;
+
+    public ShardCoordinator(ShardDirectory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param shardSize number of citing articles of a shard
+     */
+    public void setShardSize(int shardSize) {
+        this.shardSize = shardSize;
+    }
+
+    /**
+     * @param timeout milliseconds without heartbeat before a shard is given to another worker
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param numOfWorkers number of worker processes started on this machine, 0 to rely on workers started separately
+     */
+    public void setNumOfWorkers(int numOfWorkers) {
+        this.numOfWorkers = numOfWorkers;
+    }
+
+    /**
+     * Match the references of the articles [start, end) against the titles from titleOffset onwards
+     * The ranges are merged in the order they are added
+     */
+    public void addRange(int start, int end, int titleOffset) {
+        for (int shardStart = start; shardStart < end; shardStart += shardSize) {
+            shards.add(new ShardDirectory.Shard(shards.size(), shardStart, Math.min(end, shardStart + shardSize), titleOffset));
+        }
+    }
+
+    /**
+     * Run the job and wait for all the shards
+     *
+     * @param corpus the articles
+     * @param corpusFile a CorpusStore of the articles, null to save it in the directory
+     * @param resolveOverlaps see TitleMatcher.resolveOverlaps
+     * @param sink receives the links of all the shards, in order
+     * @param resultWriter receives the report and the table of the links of each shard, not closed
+     * @return the merged result of the shards
+     * @throws IOException if the directory can't be used, or if a shard failed too many times
+     */
+    public MatchResult run(Corpus corpus, File corpusFile, boolean resolveOverlaps, LinkSink sink,
+                           ResultWriter resultWriter) throws IOException {
+        directory.create();
+        if (corpusFile == null) {
+            corpusFile = new File(directory.getRoot(), "corpus.lrcs");
+            CorpusStore.write(corpusFile, corpus);
+        }
+
+        for (ShardDirectory.Shard shard : shards) {
+            directory.addTask(shard);
+        }
+
+        Properties job = new Properties();
+        job.setProperty(ShardDirectory.CORPUS, corpusFile.getAbsolutePath());
+        job.setProperty(ShardDirectory.RESOLVE_OVERLAPS, Boolean.toString(resolveOverlaps));
+        directory.writeJob(job);
+
+        List<Process> workers = startWorkers();
+        try {
+            await(workers);
+        } finally {
+            directory.markDone();
+            for (Process worker : workers) {
+                try {
+                    worker.waitFor();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    worker.destroy();
+                }
+            }
+        }
+
+        MatchResult result = new MatchResult();
+        for (ShardDirectory.Shard shard : shards) {
+            ShardResult shardResult = ShardResult.read(directory.getResultFile(shard.getIndex()));
+            result.merge(shardResult.getMatchResult());
+            shardResult.replay(sink);
+            resultWriter.write(shard.getStart(), directory.getReportFile(shardResult.getClaim()),
+                    directory.getTableFile(shardResult.getClaim()));
+        }
+        return result;
+    }
+
+    // Start the local workers, splitting the processors between them
+    private List<Process> startWorkers() throws IOException {
+        List<Process> workers = new ArrayList<>();
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        int numOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, numOfWorkers));
+        for (int i = 0; i < numOfWorkers; ++i) {
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName(),
+                    directory.getRoot().getPath(), Integer.toString(numOfThreads)).inheritIO().start());
+        }
+        return workers;
+    }
+
+    // Wait for the results, giving the shards of the failed or silent workers to other workers
+    private void await(List<Process> workers) throws IOException {
+        int[] attempts = new int[shards.size()];
+        boolean[] finished = new boolean[shards.size()];
+
+        // A shard can be claimed after its last heartbeat timed out, so the time it was first seen running counts too
+        Map<String, Long> firstSeen = new HashMap<>();
+
+        while (true) {
+            int missing = 0;
+            for (int i = 0; i < shards.size(); ++i) {
+                if (!finished[i]) {
+                    finished[i] = directory.getResultFile(i).exists();
+                    if (!finished[i]) {
+                        ++missing;
+                    }
+                }
+            }
+            if (missing == 0) {
+                return;
+            }
+
+            for (File failure : directory.listFailed()) {
+                int index = ShardDirectory.index(failure.getName());
+                String error = new String(Files.readAllBytes(failure.toPath()), StandardCharsets.UTF_8);
+                Files.delete(failure.toPath());
+                System.err.println("Shard " + index + " failed (" + failure.getName() + "): " + error);
+                retry(index, attempts);
+            }
+
+            long now = System.currentTimeMillis();
+            for (File claimed : directory.listRunning()) {
+                long seen = firstSeen.computeIfAbsent(claimed.getName(), name -> now);
+                if (now - Math.max(claimed.lastModified(), seen) > timeout && Files.deleteIfExists(claimed.toPath())) {
+                    int index = ShardDirectory.index(claimed.getName());
+                    if (!directory.getResultFile(index).exists()) {
+                        System.err.println("Shard " + index + " timed out (" + claimed.getName() + ")");
+                        retry(index, attempts);
+                    }
+                }
+            }
+
+            // Workers started separately may still come, but nobody restarts the local ones
+            if (!workers.isEmpty() && workers.stream().noneMatch(Process::isAlive)) {
+                throw new IOException("The workers exited before matching all the shards");
+            }
+
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the shards");
+            }
+        }
+    }
+
+    private void retry(int index, int[] attempts) throws IOException {
+        if (++attempts[index] >= MAX_ATTEMPTS) {
+            throw new IOException("Shard " + index + " failed " + MAX_ATTEMPTS + " times");
+        }
+        directory.addTask(shards.get(index));
+    }
+}
@@ -0,0 +1,283 @@
+package inMemory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Directory shared by a ShardCoordinator and its ShardWorkers, on a local or network file system
+ * The processes only communicate through files, and only rely on renames being atomic:
+ *
+ * - job.properties: the job, written by the coordinator once the corpus is ready
+ * - todo/shard-N: a shard waiting for a worker, holding "start end titleOffset"
+ * - running/shard-N.worker: a shard claimed by a worker, by renaming it from todo
+ *   The worker touches the file while it matches the shard (its heartbeat)
+ * - results/shard-N: the ShardResult of the shard, naming the claim which matched it
+ *   results/shard-N.worker.txt and results/shard-N.worker.tsv: the report and table of links of a claim,
+ *   written before the result. A shard which timed out may be matched by two workers at once,
+ *   each one writes its own files and the result points to the ones of its claim
+ * - failed/shard-N.worker: a shard whose worker failed, with the error
+ * - done: written by the coordinator once all the results are in, the workers exit
+ */
+public class ShardDirectory {
+    public static final String RESOLVE_OVERLAPS = "resolveOverlaps";
+    public static final String CORPUS = "corpus";
+
+    private static final String PREFIX = "shard-";
+
+    private final File root;
+    private final File todo;
+    private final File running;
+    private final File results;
+    private final File failed;
+
+    public ShardDirectory(File root) {
+        this.root = root;
+        this.todo = new File(root, "todo");
+        this.running = new File(root, "running");
+        this.results = new File(root, "results");
+        this.failed = new File(root, "failed");
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Create the directories, and remove what a previous job left in them
+     */
+    public void create() throws IOException {
+        for (File dir : new File[]{root, todo, running, results, failed}) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+        }
+        for (File dir : new File[]{todo, running, results, failed}) {
+            for (File file : list(dir)) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.deleteIfExists(new File(root, "done").toPath());
+        Files.deleteIfExists(new File(root, "job.properties").toPath());
+    }
+
+    /**
+     * Publish the job, the workers start claiming shards once it is there
+     */
+    public void writeJob(Properties job) throws IOException {
+        File temp = new File(root, "job.properties.tmp");
+        try (OutputStream output = new FileOutputStream(temp)) {
+            job.store(output, null);
+        }
+        rename(temp, new File(root, "job.properties"));
+    }
+
+    /**
+     * @return the job, null if it isn't published yet
+     */
+    public Properties readJob() throws IOException {
+        File file = new File(root, "job.properties");
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties job = new Properties();
+        try (InputStream input = new FileInputStream(file)) {
+            job.load(input);
+        }
+        return job;
+    }
+
+    /**
+     * Put a shard in todo
+     */
+    public void addTask(Shard shard) throws IOException {
+        File temp = new File(root, name(shard.index) + ".tmp");
+        Files.write(temp.toPath(), (shard.start + " " + shard.end + " " + shard.titleOffset).getBytes(StandardCharsets.UTF_8));
+        rename(temp, new File(todo, name(shard.index)));
+    }
+
+    /**
+     * Claim the first shard of todo
+     *
+     * @param worker name of the worker, unique among the workers
+     * @return the shard, null if there is none left
+     */
+    public Shard claim(String worker) throws IOException {
+        for (File task : list(todo)) {
+            File claimed = new File(running, task.getName() + "." + worker);
+            if (!task.renameTo(claimed)) {
+                // Claimed by another worker
+                continue;
+            }
+            claimed.setLastModified(System.currentTimeMillis());
+
+            String[] fields = new String(Files.readAllBytes(claimed.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+            return new Shard(index(task.getName()), Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]), claimed);
+        }
+        return null;
+    }
+
+    /**
+     * Tell the coordinator that the worker of a shard is still alive
+     *
+     * @return false if the coordinator gave the shard to another worker, the worker lost its claim
+     */
+    public boolean heartbeat(Shard shard) {
+        return shard.claimed.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Publish the result of a claimed shard
+     * The coordinator deletes the claims which timed out, then the shard belongs to another worker
+     *
+     * @return false if the claim was lost, nothing is published
+     */
+    public boolean complete(Shard shard, ShardResult result) throws IOException {
+        if (!shard.claimed.exists()) {
+            return false;
+        }
+        result.write(getResultFile(shard.index));
+        Files.deleteIfExists(shard.claimed.toPath());
+        return true;
+    }
+
+    /**
+     * Give a claimed shard back, with the error which made it fail
+     *
+     * @return false if the claim was lost, the failure isn't reported
+     */
+    public boolean fail(Shard shard, String error) throws IOException {
+        if (!shard.claimed.exists()) {
+            return false;
+        }
+        File failure = new File(failed, shard.claimed.getName());
+        Files.write(failure.toPath(), error.getBytes(StandardCharsets.UTF_8));
+        Files.deleteIfExists(shard.claimed.toPath());
+        return true;
+    }
+
+    public File getResultFile(int index) {
+        return new File(results, name(index));
+    }
+
+    /**
+     * @param claim see Shard.getClaim and ShardResult.getClaim
+     */
+    public File getReportFile(String claim) {
+        return new File(results, claim + ".txt");
+    }
+
+    /**
+     * @param claim see Shard.getClaim and ShardResult.getClaim
+     */
+    public File getTableFile(String claim) {
+        return new File(results, claim + ".tsv");
+    }
+
+    /**
+     * Shards claimed by the workers
+     */
+    public File[] listRunning() {
+        return list(running);
+    }
+
+    /**
+     * Shards whose worker failed
+     */
+    public File[] listFailed() {
+        return list(failed);
+    }
+
+    /**
+     * Index of the shard of a file of todo, running, results or failed
+     */
+    public static int index(String fileName) {
+        int end = fileName.indexOf('.');
+        return Integer.parseInt(fileName.substring(PREFIX.length(), end == -1 ? fileName.length() : end));
+    }
+
+    public void markDone() throws IOException {
+        Files.write(new File(root, "done").toPath(), new byte[0]);
+    }
+
+    public boolean isDone() {
+        return new File(root, "done").exists();
+    }
+
+    private static String name(int index) {
+        return String.format("%s%06d", PREFIX, index);
+    }
+
+    // The shards of a directory, in order of index
+    private static File[] list(File dir) {
+        File[] files = dir.listFiles((parent, name) -> name.startsWith(PREFIX) && !name.endsWith(".tmp"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("Cannot rename " + from + " to " + to);
+        }
+    }
+
+    /**
+     * A range of citing articles, matched against the titles from titleOffset onwards
+     */
+    public static class Shard {
+        private final int index;
+        private final int start;
+        private final int end;
+        private final int titleOffset;
+
+        // The file of running, null if the shard isn't claimed
+        private final File claimed;
+
+        public Shard(int index, int start, int end, int titleOffset) {
+            this(index, start, end, titleOffset, null);
+        }
+
+        private Shard(int index, int start, int end, int titleOffset, File claimed) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.titleOffset = titleOffset;
+            this.claimed = claimed;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public int getTitleOffset() {
+            return titleOffset;
+        }
+
+        /**
+         * @return the name of the claim, shard-N.worker, null if the shard isn't claimed
+         */
+        public String getClaim() {
+            return claimed == null ? null : claimed.getName();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package inMemory;
+
+import db.LinkSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Result of a shard matched by a ShardWorker: its counters, its links and the claim which matched it
+ * The worker collects the links of the RefMatchers, the coordinator replays them into its LinkWriter
+ * The report and the table of the shard are in the files of its claim, see ShardDirectory.getReportFile
+ *
+ * The links are written in order of citing id, so the result of a shard doesn't depend on the scheduling
+ * of the worker threads, nor on the worker which matched it
+ */
+public class ShardResult implements LinkSink {
+    private static final int MAGIC = 0x4C525352;  // "LRSR"
+    private static final int VERSION = 3;
+
+    private final List<Links> links = new ArrayList<>();
+    private int matchCounter;
+    private int articlesHaveMatch;
+    private String claim = "";
+
+    @Override
+    public synchronized void add(int citingId, int[] citedIds) {
+        if (citedIds.length > 0) {
+            links.add(new Links(citingId, citedIds));
+        }
+    }
+
+    /**
+     * Keep the counters of the shard
+     */
+    public void setMatchResult(MatchResult result) {
+        matchCounter = result.getMatchCounter();
+        articlesHaveMatch = result.getArticlesHaveMatch();
+    }
+
+    public MatchResult getMatchResult() {
+        return new MatchResult(matchCounter, articlesHaveMatch);
+    }
+
+    /**
+     * @param claim the claim which matched the shard, see ShardDirectory.Shard.getClaim
+     */
+    public void setClaim(String claim) {
+        this.claim = claim;
+    }
+
+    public String getClaim() {
+        return claim;
+    }
+
+    /**
+     * Hand the links to a sink, in order of citing id
+     */
+    public void replay(LinkSink sink) {
+        for (Links article : links) {
+            sink.add(article.citingId, article.citedIds);
+        }
+    }
+
+    /**
+     * Write the result to a file
+     * The file is written under another name then renamed, so a reader never sees a partial result
+     * The other name is unique, two workers matching the same shard don't write into each other's file
+     */
+    public synchronized void write(File file) throws IOException {
+        links.sort(Comparator.comparingInt(article -> article.citingId));
+
+        File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(matchCounter);
+            output.writeInt(articlesHaveMatch);
+            output.writeUTF(claim);
+
+            output.writeInt(links.size());
+            for (Links article : links) {
+                output.writeInt(article.citingId);
+                output.writeInt(article.citedIds.length);
+                for (int citedId : article.citedIds) {
+                    output.writeInt(citedId);
+                }
+            }
+        }
+
+        if (!temp.renameTo(file)) {
+            Files.deleteIfExists(temp.toPath());
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Read a result written by write
+     */
+    public static ShardResult read(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a shard result: " + file);
+            }
+
+            ShardResult result = new ShardResult();
+            result.matchCounter = input.readInt();
+            result.articlesHaveMatch = input.readInt();
+            result.claim = input.readUTF();
+
+            int numOfArticles = input.readInt();
+            for (int i = 0; i < numOfArticles; ++i) {
+                int citingId = input.readInt();
+                int[] citedIds = new int[input.readInt()];
+                for (int j = 0; j < citedIds.length; ++j) {
+                    citedIds[j] = input.readInt();
+                }
+                result.links.add(new Links(citingId, citedIds));
+            }
+            return result;
+        }
+    }
+
+    private static class Links {
+        private final int citingId;
+        private final int[] citedIds;
+
+        private Links(int citingId, int[] citedIds) {
+            this.citingId = citingId;
+            this.citedIds = citedIds;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package inMemory;
+
+import bitap.BitapPattern;
+import data.CorpusStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Worker process of a ShardCoordinator
+ * Maps the corpus of the job, compiles the titles, then matches the shards it claims until the job is done
+ * Each shard is matched by RefMatchers, as in a single process run, on the threads of the worker
+ *
+ * Arguments: <shard directory> [number of threads]
+ */
+public class ShardWorker {
+    private static final long POLL_INTERVAL = 200;
+    private static final int PROGRESS_INTERVAL = 10;
+
+    // Well below ShardCoordinator.DEFAULT_TIMEOUT, so that a slow file system doesn't get a live worker evicted
+    private static final long HEARTBEAT_INTERVAL = 5000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ShardDirectory directory = new ShardDirectory(new File(args[0]));
+        int numOfThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        // pid@host, unique among the workers sharing the directory
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+
+        // Logged like a single process run, the summary goes to metrics-<name>.json in the directory
+        JobMetrics metrics = new JobMetrics();
+        metrics.register("ShardWorker");
+        metrics.startProgressLog(PROGRESS_INTERVAL);
+        ReferenceMatcher.metrics = metrics;
+
+        Properties job = directory.readJob();
+        while (job == null) {
+            Thread.sleep(POLL_INTERVAL);
+            job = directory.readJob();
+        }
+
+        metrics.startLoading();
+        CorpusStore store = CorpusStore.open(new File(job.getProperty(ShardDirectory.CORPUS)));
+        metrics.endLoading(store.size());
+        ReferenceMatcher.corpus = store;
+        ReferenceMatcher.resolveOverlaps = Boolean.parseBoolean(job.getProperty(ShardDirectory.RESOLVE_OVERLAPS));
+        List<BitapPattern> titlePatterns = ReferenceMatcher.compileTitles(store);
+
+        // One TitleMatcher per title offset, see ReferenceMatcher.RefMatcher
+        Map<Integer, TitleMatcher> titleMatchers = new HashMap<>();
+        MatchCache cache = new MatchCache(MatchCache.DEFAULT_MAX_ENTRIES);
+        FilterStats filterStats = new FilterStats();
+        metrics.setFilterStats(filterStats);
+
+        ForkJoinPool refMatchers = new ForkJoinPool(numOfThreads);
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int numOfShards = 0;
+        metrics.startMatching(0);
+        while (!directory.isDone()) {
+            ShardDirectory.Shard shard = directory.claim(name);
+            if (shard == null) {
+                Thread.sleep(POLL_INTERVAL);
+                continue;
+            }
+
+            // Set once the coordinator gave the shard to another worker, the shard is then left to it
+            AtomicBoolean lost = new AtomicBoolean();
+            ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+                if (!directory.heartbeat(shard)) {
+                    lost.set(true);
+                }
+            }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+            try {
+                TitleMatcher matcher = titleMatchers.computeIfAbsent(shard.getTitleOffset(), offset -> {
+                    TitleMatcher titleMatcher = new TitleMatcher(titlePatterns.subList(offset, titlePatterns.size()));
+                    // The cached results are indices of titles, only valid for the titles of the matcher
+                    if (offset == 0) {
+                        titleMatcher.setCache(cache);
+                    }
+                    titleMatcher.setStats(filterStats);
+                    return titleMatcher;
+                });
+
+                // The files of the claim, another worker matching the same shard writes its own
+                ShardResult result = new ShardResult();
+                result.setClaim(shard.getClaim());
+                ReferenceMatcher.linkWriter = result;
+                File reportFile = directory.getReportFile(shard.getClaim());
+                File tableFile = directory.getTableFile(shard.getClaim());
+                ResultWriter resultWriter = new ResultWriter(reportFile, tableFile);
+                ReferenceMatcher.resultWriter = resultWriter;
+                result.setMatchResult(refMatchers.invoke(new ReferenceMatcher.RefMatcher(shard.getStart(), shard.getEnd(),
+                        matcher, shard.getTitleOffset())));
+                resultWriter.close();
+                if (!lost.get() && directory.complete(shard, result)) {
+                    ++numOfShards;
+                } else {
+                    System.err.println(name + ": lost shard " + shard.getIndex() + " to another worker");
+                    Files.deleteIfExists(reportFile.toPath());
+                    Files.deleteIfExists(tableFile.toPath());
+                }
+            } catch (Exception e) {
+                StringWriter error = new StringWriter();
+                e.printStackTrace(new PrintWriter(error));
+                if (lost.get() || !directory.fail(shard, error.toString())) {
+                    System.err.println(name + ": lost shard " + shard.getIndex() + " to another worker");
+                }
+            } finally {
+                heartbeat.cancel(false);
+            }
+        }
+
+        refMatchers.shutdown();
+        heartbeats.shutdown();
+        store.close();
+        metrics.endMatching();
+        metrics.finish(new File(directory.getRoot(), "metrics-" + name + ".json"));
+        System.out.println(name + ": " + numOfShards + " shards    Cache hits: " + cache.getHits() + "    Cache misses: "
+                + cache.getMisses() + "\n" + filterStats);
+    }
+}
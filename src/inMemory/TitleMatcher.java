@@ -0,0 +1,308 @@
+package inMemory;
+
+import bitap.BitapMatch;
+import bitap.BitapPattern;
+import bitap.MultiBitap;
+import index.CandidateFilter;
+import index.QGramIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Find the titles "contained" by a raw reference
+ *
+ * Titles long enough to be split into pieces of q characters are looked up in a QGramIndex,
+ * the candidates it returns go through the cheaper checks of a CandidateFilter, only the remaining ones
+ * are verified with Bitap
+ * The other titles are short (or allow too many errors), they are all matched at once with a MultiBitap,
+ * where short titles pack best
+ *
+ * Identical titles (e.g. re-imported or duplicated articles) share a single pattern: it goes through the index,
+ * the filters and Bitap once, and its match is fanned out to all of them
+ */
+public class TitleMatcher {
+    private final List<BitapPattern> patterns;
+
+    // The distinct patterns, and the titles sharing each of them:
+    // titles[firstTitle[i]] to titles[firstTitle[i + 1] - 1], null if all the titles are distinct
+    private final List<BitapPattern> distinct;
+    private final int[] firstTitle;
+    private final int[] titles;
+
+    private final QGramIndex index;
+    private final CandidateFilter filter;
+
+    // Indices of the distinct patterns which aren't in the index, and the MultiBitap matching them
+    private final int[] unindexed;
+    private final MultiBitap unindexedMatcher;
+
+    // Results of the texts already matched, null if they aren't cached
+    private MatchCache cache;
+
+    // Match the titles appended since a loaded cache entry was saved, by the number of titles it covers
+    private final Map<Integer, TitleMatcher> appended = new ConcurrentHashMap<>();
+
+    // Counts of the pairs each filter rejected, null if they aren't counted
+    private FilterStats stats;
+
+    /**
+     * @param patterns compiled titles, the matches refer to them by their index in this list
+     */
+    public TitleMatcher(List<BitapPattern> patterns) {
+        this.patterns = patterns;
+
+        // Same text and same maximum distance, so the same matches
+        Map<String, Integer> distinctIndices = new HashMap<>();
+        List<BitapPattern> distinctPatterns = new ArrayList<>();
+        int[] canonical = new int[patterns.size()];
+        for (int i = 0; i < patterns.size(); ++i) {
+            BitapPattern pattern = patterns.get(i);
+            Integer d = distinctIndices.putIfAbsent(pattern.getLev() + " " + pattern.getPattern(), distinctPatterns.size());
+            if (d == null) {
+                canonical[i] = distinctPatterns.size();
+                distinctPatterns.add(pattern);
+            } else {
+                canonical[i] = d;
+            }
+        }
+
+        distinct = distinctPatterns;
+        if (distinct.size() == patterns.size()) {
+            firstTitle = null;
+            titles = null;
+        } else {
+            firstTitle = new int[distinct.size() + 1];
+            for (int d : canonical) {
+                ++firstTitle[d + 1];
+            }
+            for (int d = 0; d < distinct.size(); ++d) {
+                firstTitle[d + 1] += firstTitle[d];
+            }
+            titles = new int[patterns.size()];
+            int[] next = Arrays.copyOf(firstTitle, distinct.size());
+            for (int i = 0; i < patterns.size(); ++i) {
+                titles[next[canonical[i]]++] = i;
+            }
+        }
+
+        this.index = new QGramIndex(distinct);
+        this.filter = new CandidateFilter(distinct);
+
+        List<BitapPattern> unindexedPatterns = new ArrayList<>();
+        unindexed = new int[distinct.size() - index.numOfIndexed()];
+        for (int i = 0; i < distinct.size(); ++i) {
+            if (!index.isIndexed(i)) {
+                unindexed[unindexedPatterns.size()] = i;
+                unindexedPatterns.add(distinct.get(i));
+            }
+        }
+        unindexedMatcher = MultiBitap.compile(unindexedPatterns);
+    }
+
+    /**
+     * Number of distinct patterns, the titles sharing one are matched once
+     */
+    public int numOfDistinct() {
+        return distinct.size();
+    }
+
+    /**
+     * Cache the results of matchAll, a text seen before isn't matched again
+     *
+     * @param cache empty, or loaded for the same titles or the first ones, see MatchCache.load
+     */
+    public void setCache(MatchCache cache) {
+        this.cache = cache;
+    }
+
+    public MatchCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Count the pairs rejected by each filter, the texts answered by the cache aren't counted
+     *
+     * @param stats may be shared by several TitleMatchers
+     */
+    public void setStats(FilterStats stats) {
+        this.stats = stats;
+    }
+
+    public FilterStats getStats() {
+        return stats;
+    }
+
+    public int numOfTitles() {
+        return patterns.size();
+    }
+
+    /**
+     * Identify the titles and their maximum distance, for the job of a Checkpoint and the file of a MatchCache
+     */
+    public long fingerprint() {
+        return fingerprint(patterns.size());
+    }
+
+    /**
+     * Identify the first titles and their maximum distance
+     *
+     * @param numOfTitles the titles [0, numOfTitles) are identified
+     */
+    public long fingerprint(int numOfTitles) {
+        long fingerprint = numOfTitles;
+        for (BitapPattern pattern : patterns.subList(0, numOfTitles)) {
+            fingerprint = (fingerprint ^ (pattern.getPattern().hashCode() * 31L + pattern.getLev())) * 0x100000001B3L;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Find all the titles "contained" by the text
+     *
+     * @param text to be searched in
+     * @param matched empty BitSet, bit i is set if the title i is contained in the text
+     */
+    public void matchAll(CharSequence text, BitSet matched) {
+        if (cache == null) {
+            match(text, matched);
+            return;
+        }
+
+        MatchCache.Key key = MatchCache.key(text);
+        MatchCache.Entry cached = cache.get(key);
+        if (cached == null) {
+            match(text, matched);
+            cache.put(key, matched.stream().toArray(), patterns.size());
+            return;
+        }
+
+        for (int title : cached.getTitles()) {
+            matched.set(title);
+        }
+        int first = cached.getNumOfTitles();
+        if (first < patterns.size()) {
+            // Loaded from a run with fewer titles, only the ones appended since are matched
+            TitleMatcher matcher = appended.computeIfAbsent(first, offset -> {
+                TitleMatcher titleMatcher = new TitleMatcher(patterns.subList(offset, patterns.size()));
+                titleMatcher.setStats(stats);
+                return titleMatcher;
+            });
+            BitSet appendedMatched = new BitSet();
+            matcher.match(text, appendedMatched);
+            for (int i = appendedMatched.nextSetBit(0); i >= 0; i = appendedMatched.nextSetBit(i + 1)) {
+                matched.set(first + i);
+            }
+            cache.put(key, matched.stream().toArray(), patterns.size());
+        }
+    }
+
+    private void match(CharSequence text, BitSet matched) {
+        if (titles == null) {
+            matchDistinct(text, matched);
+            return;
+        }
+
+        BitSet distinctMatched = new BitSet(distinct.size());
+        matchDistinct(text, distinctMatched);
+        for (int d = distinctMatched.nextSetBit(0); d >= 0; d = distinctMatched.nextSetBit(d + 1)) {
+            for (int k = firstTitle[d]; k < firstTitle[d + 1]; ++k) {
+                matched.set(titles[k]);
+            }
+        }
+    }
+
+    /**
+     * @param matched empty BitSet, bit i is set if the distinct pattern i is contained in the text
+     */
+    private void matchDistinct(CharSequence text, BitSet matched) {
+        // The cheapest filter first: the q-grams give the candidates, the rest only look at these
+        index.candidates(text, matched);
+        int numOfCandidates = matched.cardinality();
+        int lengthRejected = 0, signatureRejected = 0, histogramRejected = 0, verified = 0;
+
+        if (numOfCandidates > 0) {
+            CandidateFilter.Profile profile = filter.profile(text);
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                if (filter.failsLength(i, profile)) {
+                    ++lengthRejected;
+                    matched.clear(i);
+                } else if (filter.failsSignature(i, profile)) {
+                    ++signatureRejected;
+                    matched.clear(i);
+                } else if (filter.failsHistogram(i, profile)) {
+                    ++histogramRejected;
+                    matched.clear(i);
+                } else {
+                    ++verified;
+                    if (!distinct.get(i).matches(text)) {
+                        matched.clear(i);
+                    }
+                }
+            }
+        }
+
+        if (stats != null) {
+            stats.add(patterns.size(), patterns.size() - distinct.size(), index.numOfIndexed() - numOfCandidates, lengthRejected, signatureRejected,
+                    histogramRejected, verified, unindexed.length);
+        }
+
+        if (unindexed.length > 0) {
+            BitSet unindexedMatched = new BitSet(unindexed.length);
+            unindexedMatcher.matchAll(text, unindexedMatched);
+            for (int i = unindexedMatched.nextSetBit(0); i >= 0; i = unindexedMatched.nextSetBit(i + 1)) {
+                matched.set(unindexed[i]);
+            }
+        }
+    }
+
+    /**
+     * Find the best occurrence of a title, see BitapPattern.findBest
+     *
+     * @param title index of the title
+     * @param text the text it was matched against
+     */
+    public BitapMatch findBest(int title, CharSequence text) {
+        return patterns.get(title).findBest(text);
+    }
+
+    /**
+     * Rank the titles matched in the same part of the text
+     * A title is dropped if its best occurrence lies within the best occurrence of another matched title
+     * matching more characters (its length minus its distance), e.g. a short title which is a part of a longer one
+     *
+     * @param text the text the titles were matched against
+     * @param matched titles found by matchAll, the dropped ones are cleared
+     */
+    public void resolveOverlaps(CharSequence text, BitSet matched) {
+        int numOfMatched = matched.cardinality();
+        if (numOfMatched < 2) {
+            return;
+        }
+
+        int[] titles = new int[numOfMatched];
+        BitapMatch[] occurrences = new BitapMatch[numOfMatched];
+        int[] scores = new int[numOfMatched];
+        int n = 0;
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            titles[n] = i;
+            occurrences[n] = patterns.get(i).findBest(text);
+            scores[n] = patterns.get(i).getPattern().length() - occurrences[n].getDistance();
+            ++n;
+        }
+
+        for (int i = 0; i < numOfMatched; ++i) {
+            for (int j = 0; j < numOfMatched; ++j) {
+                if (scores[j] > scores[i] && occurrences[i].isWithin(occurrences[j])) {
+                    matched.clear(titles[i]);
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package index;
+
+import bitap.Bitap;
+import bitap.BitapPattern;
+
+import java.util.List;
+
+/**
+ * Cheap necessary conditions for a pattern to be "contained" by a text, checked before Bitap
+ * A pattern rejected by one of them is guaranteed not to be contained
+ *
+ * - Length: the text holds at least the length of the pattern minus its maximum distance characters
+ * - Signature: each character of the pattern missing from the text takes an edit,
+ *   so the pattern misses at most maximum distance of the characters present in the text
+ * - Histogram: the same, counting the occurrences of each character
+ *
+ * The characters are grouped in BUCKETS buckets by their Bitap.code, so the signature of a text is a long
+ * and the histogram of a pattern fits in a few bytes. Grouping only makes the conditions weaker, never wrong
+ * Characters outside of the Bitap alphabet never match, they are left out
+ */
+public class CandidateFilter {
+    private static final int BUCKETS = 64;
+
+    // Minimum length of a text containing the pattern
+    private final int[] minLengths;
+    private final int[] levs;
+
+    // Bit b is set if the pattern has a character of the bucket b
+    private final long[] signatures;
+
+    // histograms[id * BUCKETS + b]: the number of characters of the pattern id in the bucket b
+    // Patterns are at most 255 characters long, so a count fits in an unsigned byte
+    private final byte[] histograms;
+
+    /**
+     * @param patterns compiled patterns, the checks refer to them by their index in this list
+     */
+    public CandidateFilter(List<BitapPattern> patterns) {
+        minLengths = new int[patterns.size()];
+        levs = new int[patterns.size()];
+        signatures = new long[patterns.size()];
+        histograms = new byte[patterns.size() * BUCKETS];
+
+        for (int id = 0; id < patterns.size(); ++id) {
+            String needle = patterns.get(id).getPattern();
+            levs[id] = patterns.get(id).getLev();
+            minLengths[id] = needle.length() - levs[id];
+
+            for (int i = 0; i < needle.length(); ++i) {
+                int code = Bitap.code(needle.charAt(i));
+                if (code != Bitap.ALPHABET_SIZE) {
+                    signatures[id] |= 1L << (code % BUCKETS);
+                    ++histograms[id * BUCKETS + code % BUCKETS];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the signature and the histogram of a text, once for all the patterns checked against it
+     */
+    public Profile profile(CharSequence text) {
+        Profile profile = new Profile(text.length());
+        for (int i = 0; i < text.length(); ++i) {
+            int code = Bitap.code(text.charAt(i));
+            if (code != Bitap.ALPHABET_SIZE) {
+                profile.signature |= 1L << (code % BUCKETS);
+                ++profile.histogram[code % BUCKETS];
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @return true if the text is too short to contain the pattern
+     */
+    public boolean failsLength(int id, Profile text) {
+        return text.length < minLengths[id];
+    }
+
+    /**
+     * @return true if more characters of the pattern are missing from the text than it allows errors
+     */
+    public boolean failsSignature(int id, Profile text) {
+        return Long.bitCount(signatures[id] & ~text.signature) > levs[id];
+    }
+
+    /**
+     * @return true if more occurrences of the characters of the pattern are missing from the text than it allows errors
+     */
+    public boolean failsHistogram(int id, Profile text) {
+        int missing = 0;
+        int start = id * BUCKETS;
+        for (long buckets = signatures[id]; buckets != 0; buckets &= buckets - 1) {
+            int b = Long.numberOfTrailingZeros(buckets);
+            missing += Math.max(0, (histograms[start + b] & 0xFF) - text.histogram[b]);
+            if (missing > levs[id]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Signature and histogram of a text
+     */
+    public static class Profile {
+        private final int length;
+        private long signature;
+        private final int[] histogram = new int[BUCKETS];
+
+        private Profile(int length) {
+            this.length = length;
+        }
+    }
+}
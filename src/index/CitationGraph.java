@@ -0,0 +1,290 @@
+package index;
+
+import db.LinkSink;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Citation links between the articles, in compressed sparse row form
+ * The articles are numbered by their index in the corpus (ids in increasing order), the links are plain ints:
+ * - the articles cited by i are cited[citedOffsets[i]] to cited[citedOffsets[i + 1] - 1], in increasing order
+ * - the articles citing i are citing[citingOffsets[i]] to citing[citingOffsets[i + 1] - 1], in increasing order
+ *
+ * Built by a Builder, which collects the links from the matchers, or read from a file written by write
+ * The file holds the ids and the forward rows, the reverse rows are rebuilt when it is read
+ */
+public class CitationGraph {
+    private static final int MAGIC = 0x4C524347;  // "LRCG"
+    private static final int VERSION = 1;
+
+    // Number of ints written or read at once
+    private static final int IO_BLOCK = 1 << 16;
+
+    private final int[] ids;
+    private final int[] citedOffsets;
+    private final int[] cited;
+    private final int[] citingOffsets;
+    private final int[] citing;
+
+    private CitationGraph(int[] ids, int[] citedOffsets, int[] cited) {
+        this.ids = ids;
+        this.citedOffsets = citedOffsets;
+        this.cited = cited;
+
+        // Reverse rows: the citing articles come in increasing order, as the forward rows are scanned in order
+        citingOffsets = new int[ids.length + 1];
+        for (int target : cited) {
+            ++citingOffsets[target + 1];
+        }
+        for (int i = 0; i < ids.length; ++i) {
+            citingOffsets[i + 1] += citingOffsets[i];
+        }
+        citing = new int[cited.length];
+        int[] next = Arrays.copyOf(citingOffsets, ids.length);
+        for (int source = 0; source < ids.length; ++source) {
+            for (int k = citedOffsets[source]; k < citedOffsets[source + 1]; ++k) {
+                citing[next[cited[k]]++] = source;
+            }
+        }
+    }
+
+    public int numOfArticles() {
+        return ids.length;
+    }
+
+    public int numOfLinks() {
+        return cited.length;
+    }
+
+    public int getId(int article) {
+        return ids[article];
+    }
+
+    /**
+     * @return the index of the article with this id, negative if there is none
+     */
+    public int indexOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    /**
+     * Number of articles cited by an article
+     */
+    public int numOfCited(int article) {
+        return citedOffsets[article + 1] - citedOffsets[article];
+    }
+
+    /**
+     * @param article citing article
+     * @param k from 0 to numOfCited(article) - 1
+     * @return the index of its k-th cited article
+     */
+    public int getCited(int article, int k) {
+        return cited[citedOffsets[article] + k];
+    }
+
+    /**
+     * Number of articles citing an article, i.e. its citation count
+     */
+    public int numOfCiting(int article) {
+        return citingOffsets[article + 1] - citingOffsets[article];
+    }
+
+    /**
+     * @param article cited article
+     * @param k from 0 to numOfCiting(article) - 1
+     * @return the index of its k-th citing article
+     */
+    public int getCiting(int article, int k) {
+        return citing[citingOffsets[article] + k];
+    }
+
+    /**
+     * Save the graph
+     *
+     * @param file to be written
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(0);
+            FileChannel channel = output.getChannel();
+            writeInts(channel, new int[]{MAGIC, VERSION, ids.length, cited.length});
+            writeInts(channel, ids);
+            writeInts(channel, citedOffsets);
+            writeInts(channel, cited);
+        }
+    }
+
+    /**
+     * Load a graph saved by write
+     *
+     * @param file written by write
+     * @throws IOException if the file can't be read or isn't a citation graph
+     */
+    public static CitationGraph read(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            int[] header = readInts(channel, 4);
+            if (header[0] != MAGIC || header[1] != VERSION) {
+                throw new IOException("Not a citation graph: " + file);
+            }
+
+            int[] ids = readInts(channel, header[2]);
+            int[] citedOffsets = readInts(channel, header[2] + 1);
+            int[] cited = readInts(channel, header[3]);
+            return new CitationGraph(ids, citedOffsets, cited);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * Math.min(values.length, IO_BLOCK));
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int start = 0; start < values.length; start += IO_BLOCK) {
+            int length = Math.min(IO_BLOCK, values.length - start);
+            ints.clear();
+            ints.put(values, start, length);
+            buffer.clear().limit(4 * length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static int[] readInts(FileChannel channel, int length) throws IOException {
+        int[] values = new int[length];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * Math.min(length, IO_BLOCK));
+        for (int start = 0; start < length; start += IO_BLOCK) {
+            int blockLength = Math.min(IO_BLOCK, length - start);
+            buffer.clear().limit(4 * blockLength);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated citation graph");
+                }
+            }
+            buffer.flip();
+            buffer.asIntBuffer().get(values, start, blockLength);
+        }
+        return values;
+    }
+
+    /**
+     * Collect the links found by the matchers, from any number of threads
+     * Each thread appends its links to its own primitive buffer, they are merged by build
+     */
+    public static class Builder implements LinkSink {
+        private final int[] ids;
+
+        // (citing index, cited index) pairs, one buffer per thread
+        private final ThreadLocal<TIntArrayList> buffers = ThreadLocal.withInitial(this::newBuffer);
+        private final List<TIntArrayList> allBuffers = new ArrayList<>();
+
+        /**
+         * @param ids the ids of the articles, in increasing order: the article i has the id ids[i]
+         */
+        public Builder(int[] ids) {
+            this.ids = ids;
+        }
+
+        /**
+         * @throws IllegalArgumentException if an id isn't one of the articles
+         */
+        @Override
+        public void add(int citingId, int[] citedIds) {
+            if (citedIds.length == 0) {
+                return;
+            }
+
+            // Resolved first, so that an unknown id doesn't leave half a pair in the buffer
+            int source = index(citingId);
+            int[] targets = new int[citedIds.length];
+            for (int c = 0; c < citedIds.length; ++c) {
+                targets[c] = index(citedIds[c]);
+            }
+
+            TIntArrayList buffer = buffers.get();
+            for (int target : targets) {
+                buffer.add(source);
+                buffer.add(target);
+            }
+        }
+
+        /**
+         * Add the links of a previous graph between its articles up to lastId, e.g. the links an incremental run
+         * doesn't find again. Links from or to an article which isn't in this graph anymore are dropped
+         */
+        public void addAll(CitationGraph previous, int lastId) {
+            TIntArrayList buffer = buffers.get();
+            for (int article = 0; article < previous.numOfArticles() && previous.getId(article) <= lastId; ++article) {
+                int source = Arrays.binarySearch(ids, previous.getId(article));
+                if (source < 0) {
+                    continue;
+                }
+                for (int k = 0; k < previous.numOfCited(article); ++k) {
+                    int citedId = previous.getId(previous.getCited(article, k));
+                    int target = Arrays.binarySearch(ids, citedId);
+                    if (citedId <= lastId && target >= 0) {
+                        buffer.add(source);
+                        buffer.add(target);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merge the buffers into the graph, and release them
+         * The adding threads must be done
+         */
+        public synchronized CitationGraph build() {
+            int[] citedOffsets = new int[ids.length + 1];
+            int numOfLinks = 0;
+            for (TIntArrayList buffer : allBuffers) {
+                for (int k = 0; k < buffer.size(); k += 2) {
+                    ++citedOffsets[buffer.getQuick(k) + 1];
+                }
+                numOfLinks += buffer.size() / 2;
+            }
+            for (int i = 0; i < ids.length; ++i) {
+                citedOffsets[i + 1] += citedOffsets[i];
+            }
+
+            int[] cited = new int[numOfLinks];
+            int[] next = Arrays.copyOf(citedOffsets, ids.length);
+            for (TIntArrayList buffer : allBuffers) {
+                for (int k = 0; k < buffer.size(); k += 2) {
+                    cited[next[buffer.getQuick(k)]++] = buffer.getQuick(k + 1);
+                }
+            }
+            allBuffers.clear();
+
+            // The threads add the links in any order
+            for (int i = 0; i < ids.length; ++i) {
+                Arrays.sort(cited, citedOffsets[i], citedOffsets[i + 1]);
+            }
+            return new CitationGraph(ids, citedOffsets, cited);
+        }
+
+        private int index(int id) {
+            int index = Arrays.binarySearch(ids, id);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown article id: " + id);
+            }
+            return index;
+        }
+
+        private synchronized TIntArrayList newBuffer() {
+            TIntArrayList buffer = new TIntArrayList();
+            allBuffers.add(buffer);
+            return buffer;
+        }
+    }
+}
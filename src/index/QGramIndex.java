@@ -0,0 +1,179 @@
+package index;
+
+import bitap.Bitap;
+import bitap.BitapPattern;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Inverted index from q-grams to the patterns (titles) containing them
+ * Used to find the few patterns worth verifying with Bitap instead of all of them
+ *
+ * A pattern matched with k errors is split into k + 1 pieces, by the pigeonhole principle
+ * at least one piece appears exactly in the text. So one q-gram of each piece is indexed,
+ * the rarest one among the patterns, and a pattern is a candidate if one of its q-grams is in the text.
+ * Patterns whose pieces are shorter than q can't be indexed, see isIndexed.
+ *
+ * A q-gram is the Bitap.code of its q characters packed into a long, 8 bits per character
+ * The postings are stored in primitive arrays: the patterns of a q-gram are
+ * postings[offsets[slot]] to postings[offsets[slot + 1] - 1], with slot = gramSlots.get(q-gram)
+ */
+public class QGramIndex {
+    public static final int DEFAULT_Q = 5;
+
+    private final int q;
+    private final long gramMask;
+    private final BitSet indexed;
+
+    private final TLongIntHashMap gramSlots;
+    private final int[] offsets;
+    private final int[] postings;
+
+    public QGramIndex(List<BitapPattern> patterns) {
+        this(patterns, DEFAULT_Q);
+    }
+
+    /**
+     * Build the index
+     *
+     * @param patterns compiled patterns, the candidates refer to them by their index in this list
+     * @param q length of the q-grams, from 1 to 7
+     */
+    public QGramIndex(List<BitapPattern> patterns, int q) {
+        if (q < 1 || q > 7) {
+            throw new IllegalArgumentException("q must be in [1, 7]: " + q);
+        }
+
+        this.q = q;
+        this.gramMask = (1L << (8 * q)) - 1;
+        this.indexed = new BitSet(patterns.size());
+
+        // First pass: count the q-grams of the patterns
+        TLongIntHashMap frequencies = new TLongIntHashMap();
+        for (BitapPattern pattern : patterns) {
+            if (isIndexable(pattern)) {
+                String needle = pattern.getPattern();
+                for (int i = 0; i + q <= needle.length(); ++i) {
+                    frequencies.adjustOrPutValue(gram(needle, i), 1, 1);
+                }
+            }
+        }
+
+        // Second pass: pick the rarest q-gram of each piece
+        gramSlots = new TLongIntHashMap(frequencies.size(), 0.5f, -1L, -1);
+        TIntArrayList slotSizes = new TIntArrayList();
+        TIntArrayList slots = new TIntArrayList();
+        TIntArrayList ids = new TIntArrayList();
+
+        for (int id = 0; id < patterns.size(); ++id) {
+            BitapPattern pattern = patterns.get(id);
+            if (!isIndexable(pattern)) {
+                continue;
+            }
+            indexed.set(id);
+
+            String needle = pattern.getPattern();
+            int pieces = pattern.getLev() + 1;
+            int previousSlot = -1;
+            for (int piece = 0; piece < pieces; ++piece) {
+                int pieceStart = piece * needle.length() / pieces;
+                int pieceEnd = (piece + 1) * needle.length() / pieces;
+
+                long rarest = gram(needle, pieceStart);
+                for (int i = pieceStart + 1; i + q <= pieceEnd; ++i) {
+                    long gram = gram(needle, i);
+                    if (frequencies.get(gram) < frequencies.get(rarest)) {
+                        rarest = gram;
+                    }
+                }
+
+                int slot = gramSlots.get(rarest);
+                if (slot == -1) {
+                    slot = slotSizes.size();
+                    gramSlots.put(rarest, slot);
+                    slotSizes.add(0);
+                }
+
+                // Pieces of a pattern may share their rarest q-gram
+                if (slot != previousSlot) {
+                    slotSizes.set(slot, slotSizes.get(slot) + 1);
+                    slots.add(slot);
+                    ids.add(id);
+                    previousSlot = slot;
+                }
+            }
+        }
+
+        offsets = new int[slotSizes.size() + 1];
+        for (int slot = 0; slot < slotSizes.size(); ++slot) {
+            offsets[slot + 1] = offsets[slot] + slotSizes.get(slot);
+        }
+
+        postings = new int[ids.size()];
+        int[] next = new int[slotSizes.size()];
+        System.arraycopy(offsets, 0, next, 0, next.length);
+        for (int i = 0; i < ids.size(); ++i) {
+            postings[next[slots.get(i)]++] = ids.get(i);
+        }
+    }
+
+    /**
+     * A pattern can be indexed if each of its pieces is at least q characters long
+     */
+    private boolean isIndexable(BitapPattern pattern) {
+        return pattern.getLev() < pattern.getPattern().length()
+                && pattern.getPattern().length() / (pattern.getLev() + 1) >= q;
+    }
+
+    private long gram(String str, int start) {
+        long gram = 0;
+        for (int i = start; i < start + q; ++i) {
+            gram = (gram << 8) | Bitap.code(str.charAt(i));
+        }
+        return gram;
+    }
+
+    /**
+     * Check if a pattern is in the index
+     * Patterns which aren't indexed are never reported as candidates, they must be verified separately
+     *
+     * @param id index of the pattern
+     * @return true if the pattern is indexed
+     */
+    public boolean isIndexed(int id) {
+        return indexed.get(id);
+    }
+
+    /**
+     * Number of indexed patterns
+     */
+    public int numOfIndexed() {
+        return indexed.cardinality();
+    }
+
+    /**
+     * Find the indexed patterns which may be "contained" by the text
+     * A pattern which isn't a candidate is guaranteed not to be contained
+     *
+     * @param text to be searched in
+     * @param candidates bit i is set if the pattern i is a candidate, other bits are left untouched
+     */
+    public void candidates(CharSequence text, BitSet candidates) {
+        long gram = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            gram = ((gram << 8) | Bitap.code(text.charAt(i))) & gramMask;
+
+            if (i >= q - 1) {
+                int slot = gramSlots.get(gram);
+                if (slot != -1) {
+                    for (int p = offsets[slot]; p < offsets[slot + 1]; ++p) {
+                        candidates.set(postings[p]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package index;
+
+import bitap.Bitap;
+import bitap.BitapPattern;
+import data.Corpus;
+import data.References;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Suffix array over the cleaned references of the articles, in a memory-mapped file
+ * The inverse of TitleMatcher: given a title, find the articles citing it, without scanning all the references
+ *
+ * A title matched with k errors is split into k + 1 pieces, by the pigeonhole principle at least one piece appears
+ * exactly in the reference. Each piece is searched in the suffix array (seed), then the entry around each of its
+ * occurrences is verified with Bitap (extend). A lookup costs about the length of the title times log of
+ * the size of the references, plus the occurrences of its pieces
+ *
+ * Like CorpusStore, each character is stored as its Bitap.code, the references are separated by
+ * References.ENTRY_SEPARATOR, as their entries are, so no piece is found across two entries
+ * The file is made of:
+ * - a header: MAGIC, VERSION, number of articles n, hash of their references (see hash), length of the texts m
+ * - the ids, n ints, in increasing order
+ * - the starts, n + 1 ints: the reference of the article i is [starts[i], starts[i + 1] - 1) in the texts
+ * - the texts, m bytes, padded to a multiple of 4
+ * - the suffix array, m ints: the starts of the suffixes of the texts, in lexicographic order
+ *
+ * The texts are at most 2^31 - 1 characters, and building the suffix array takes about 20 bytes per character
+ */
+public class ReferenceIndex implements AutoCloseable {
+    private static final int MAGIC = 0x4C525249;  // "LRRI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    // Ints per mapping of the suffix array, a mapping can't be larger than 2 GB
+    private static final int SEGMENT_SHIFT = 28;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private static final int SEPARATOR = Bitap.code(References.ENTRY_SEPARATOR);
+
+    private final RandomAccessFile file;
+    private final int size;
+    private final long hash;
+    private final IntBuffer ids;
+    private final int[] starts;
+    private final ByteBuffer texts;
+    private final IntBuffer[] suffixes;
+
+    private ReferenceIndex(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        FileChannel channel = file.getChannel();
+
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            file.close();
+            throw new IOException("Not a reference index: " + path);
+        }
+        size = header.getInt();
+        hash = header.getLong();
+        int length = header.getInt();
+
+        long position = HEADER_SIZE;
+        ids = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * size).asIntBuffer();
+        position += 4L * size;
+
+        // The starts are searched for every occurrence, they are on the heap
+        starts = new int[size + 1];
+        channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (size + 1)).asIntBuffer().get(starts);
+        position += 4L * (size + 1);
+
+        texts = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += padded(length);
+
+        suffixes = new IntBuffer[(int) ((length + (long) SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int s = 0; s < suffixes.length; ++s) {
+            long segmentLength = Math.min(1L << SEGMENT_SHIFT, length - ((long) s << SEGMENT_SHIFT));
+            suffixes[s] = channel.map(FileChannel.MapMode.READ_ONLY, position, 4 * segmentLength).asIntBuffer();
+            position += 4 * segmentLength;
+        }
+    }
+
+    /**
+     * Map a reference index
+     *
+     * @param path file written by write()
+     * @throws IOException if the file can't be read or isn't a reference index
+     */
+    public static ReferenceIndex open(File path) throws IOException {
+        return new ReferenceIndex(path);
+    }
+
+    /**
+     * Index the references of the first articles of a corpus
+     * The file is written under another name then renamed, an index still mapped by a reader isn't truncated
+     *
+     * @param path file to be written
+     * @param corpus articles in order of id, with cleaned references
+     * @param end the articles [0, end) are indexed
+     * @throws IOException if the file can't be written
+     */
+    public static void write(File path, Corpus corpus, int end) throws IOException {
+        int[] starts = new int[end + 1];
+        long length = 0;
+        for (int i = 0; i < end; ++i) {
+            starts[i] = (int) length;
+            length += corpus.getReference(i).length() + 1;
+            if (length >= Integer.MAX_VALUE) {
+                throw new IOException("References too long to be indexed: " + length + " characters");
+            }
+        }
+        starts[end] = (int) length;
+
+        byte[] texts = new byte[(int) length];
+        for (int i = 0; i < end; ++i) {
+            CharSequence reference = corpus.getReference(i);
+            for (int j = 0; j < reference.length(); ++j) {
+                texts[starts[i] + j] = (byte) Bitap.code(reference.charAt(j));
+            }
+            texts[starts[i + 1] - 1] = (byte) SEPARATOR;
+        }
+        int[] suffixArray = suffixArray(texts);
+
+        File temp = new File(path.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(end);
+            output.writeLong(hash(corpus, end));
+            output.writeInt(texts.length);
+
+            for (int i = 0; i < end; ++i) {
+                output.writeInt(corpus.getId(i));
+            }
+            for (int start : starts) {
+                output.writeInt(start);
+            }
+            output.write(texts);
+            for (long i = texts.length; i < padded(texts.length); ++i) {
+                output.writeByte(0);
+            }
+            for (int suffix : suffixArray) {
+                output.writeInt(suffix);
+            }
+        }
+
+        Files.deleteIfExists(path.toPath());
+        if (!temp.renameTo(path)) {
+            throw new IOException("Cannot rename " + temp + " to " + path);
+        }
+    }
+
+    /**
+     * Identify the references of the first articles of a corpus
+     * An index is only valid for a corpus whose first articles have the same ids and hash
+     */
+    public static long hash(Corpus corpus, int end) {
+        long hash = end;
+        for (int i = 0; i < end; ++i) {
+            CharSequence reference = corpus.getReference(i);
+            long articleHash = corpus.getId(i);
+            for (int j = 0; j < reference.length(); ++j) {
+                articleHash = articleHash * 31 + reference.charAt(j);
+            }
+            hash = (hash ^ articleHash) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Check that the index holds the references of the first articles of a corpus, as they are now
+     */
+    public boolean isValidFor(Corpus corpus) {
+        if (size > corpus.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; ++i) {
+            if (ids.get(i) != corpus.getId(i)) {
+                return false;
+            }
+        }
+        return hash == hash(corpus, size);
+    }
+
+    /**
+     * Number of indexed articles, the first ones of the corpus
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the articles citing a title: one entry of their reference "contains" it, see BitapPattern.matches
+     *
+     * @param title compiled title
+     * @param citing bit i is set if the article i cites the title, other bits are left untouched
+     */
+    public void find(BitapPattern title, BitSet citing) {
+        EntryText entry = new EntryText(texts);
+        String needle = title.getPattern();
+        int pieces = title.getLev() + 1;
+        if (pieces > needle.length()) {
+            // Empty pieces occur everywhere, every entry must be verified
+            for (int i = 0; i < size; ++i) {
+                for (int start = starts[i]; start < starts[i + 1]; start = entryEnd(start) + 1) {
+                    verify(title, start, citing, entry);
+                }
+            }
+            return;
+        }
+
+        // The entries already verified for this title, by their start
+        // A set of the hits, not a bitmap of the texts: the cost follows the hits, not the size of the corpus
+        TIntHashSet verified = new TIntHashSet();
+        for (int piece = 0; piece < pieces; ++piece) {
+            byte[] seed = codes(needle, piece * needle.length() / pieces, (piece + 1) * needle.length() / pieces);
+            int first = lowerBound(seed, false);
+            int last = lowerBound(seed, true);
+            for (int r = first; r < last; ++r) {
+                int entryStart = entryStart(suffix(r));
+                if (verified.add(entryStart)) {
+                    verify(title, entryStart, citing, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param entry reused for every entry verified by a lookup
+     */
+    private void verify(BitapPattern title, int entryStart, BitSet citing, EntryText entry) {
+        int article = articleOf(entryStart);
+        if (citing.get(article)) {
+            return;
+        }
+
+        // Empty entries aren't matched, see References.entries
+        int entryEnd = entryEnd(entryStart);
+        if (entryEnd == entryStart) {
+            return;
+        }
+        entry.start = entryStart;
+        entry.length = entryEnd - entryStart;
+        if (title.matches(entry)) {
+            citing.set(article);
+        }
+    }
+
+    /**
+     * @param after false for the first suffix not less than the seed, true for the first one greater than it
+     * @return the rank of this suffix in the suffix array
+     */
+    private int lowerBound(byte[] seed, boolean after) {
+        int low = 0, high = texts.limit();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(suffix(middle), seed);
+            if (comparison < 0 || (after && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare the start of a suffix to a seed, a suffix starting with the seed is equal to it
+     */
+    private int compare(int suffix, byte[] seed) {
+        for (int j = 0; j < seed.length; ++j) {
+            if (suffix + j == texts.limit()) {
+                return -1;
+            }
+            int difference = (texts.get(suffix + j) & 0xFF) - (seed[j] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private int suffix(int rank) {
+        return suffixes[rank >>> SEGMENT_SHIFT].get(rank & SEGMENT_MASK);
+    }
+
+    private int entryStart(int position) {
+        while (position > 0 && (texts.get(position - 1) & 0xFF) != SEPARATOR) {
+            --position;
+        }
+        return position;
+    }
+
+    // Every reference ends with a separator
+    private int entryEnd(int position) {
+        while ((texts.get(position) & 0xFF) != SEPARATOR) {
+            ++position;
+        }
+        return position;
+    }
+
+    private int articleOf(int position) {
+        int low = 0, high = size - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static byte[] codes(String str, int start, int end) {
+        byte[] codes = new byte[end - start];
+        for (int i = start; i < end; ++i) {
+            codes[i - start] = (byte) Bitap.code(str.charAt(i));
+        }
+        return codes;
+    }
+
+    private static long padded(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    /**
+     * Sort the suffixes of the texts by prefix doubling, in O(m log m)
+     * The suffixes are sorted as the cyclic shifts of the texts followed by a sentinel, smaller than any code,
+     * each round sorts them by their first 2^h characters with two counting sorts
+     */
+    static int[] suffixArray(byte[] texts) {
+        int m = texts.length + 1;
+        int[] order = new int[m];
+        int[] classes = new int[m];
+        int[] nextOrder = new int[m];
+        int[] nextClasses = new int[m];
+        int[] counts = new int[Math.max(257, m)];
+
+        for (int i = 0; i < texts.length; ++i) {
+            ++counts[(texts[i] & 0xFF) + 1];
+        }
+        ++counts[0];
+        for (int c = 1; c < 257; ++c) {
+            counts[c] += counts[c - 1];
+        }
+        for (int i = m - 1; i >= 0; --i) {
+            order[--counts[code(texts, i)]] = i;
+        }
+        int numOfClasses = 1;
+        classes[order[0]] = 0;
+        for (int r = 1; r < m; ++r) {
+            if (code(texts, order[r]) != code(texts, order[r - 1])) {
+                ++numOfClasses;
+            }
+            classes[order[r]] = numOfClasses - 1;
+        }
+
+        for (int shift = 1; numOfClasses < m; shift <<= 1) {
+            // Already sorted by the second half, stable sort by the first half
+            for (int r = 0; r < m; ++r) {
+                nextOrder[r] = order[r] >= shift ? order[r] - shift : order[r] + (m - shift);
+            }
+            Arrays.fill(counts, 0, numOfClasses, 0);
+            for (int r = 0; r < m; ++r) {
+                ++counts[classes[nextOrder[r]]];
+            }
+            for (int c = 1; c < numOfClasses; ++c) {
+                counts[c] += counts[c - 1];
+            }
+            for (int r = m - 1; r >= 0; --r) {
+                order[--counts[classes[nextOrder[r]]]] = nextOrder[r];
+            }
+
+            numOfClasses = 1;
+            nextClasses[order[0]] = 0;
+            for (int r = 1; r < m; ++r) {
+                int current = order[r], previous = order[r - 1];
+                if (classes[current] != classes[previous]
+                        || classes[rotate(current, shift, m)] != classes[rotate(previous, shift, m)]) {
+                    ++numOfClasses;
+                }
+                nextClasses[current] = numOfClasses - 1;
+            }
+            int[] swap = classes;
+            classes = nextClasses;
+            nextClasses = swap;
+        }
+
+        // The sentinel is the smallest suffix
+        return Arrays.copyOfRange(order, 1, m);
+    }
+
+    // (i + shift) % m, without overflow
+    private static int rotate(int i, int shift, int m) {
+        return i < m - shift ? i + shift : i - (m - shift);
+    }
+
+    // The code of a character shifted by one, 0 is the sentinel
+    private static int code(byte[] texts, int i) {
+        return i == texts.length ? 0 : (texts[i] & 0xFF) + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * An entry of the texts, decoded on the fly, like the texts of a CorpusStore
+     */
+    private static class EntryText implements CharSequence {
+        private final ByteBuffer texts;
+        private int start;
+        private int length;
+
+        private EntryText(ByteBuffer texts) {
+            this.texts = texts;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return Bitap.letter(texts.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            EntryText text = new EntryText(texts);
+            text.start = this.start + start;
+            text.length = end - start;
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; ++i) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
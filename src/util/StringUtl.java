@@ -2,28 +2,129 @@ package util;
 
 import bitap.Bitap;
 
+import java.text.Normalizer;
+
 public class StringUtl {
+    // Two-level tables from a character to its cleaned (CLEAN_PAGES) or folded (FOLD_PAGES) form:
+    // PAGES[c >>> 8][c & 0xFF], 0 if the character is removed
+    // Only the pages holding at least one kept character are allocated
+    private static final char[][] CLEAN_PAGES = new char[256][];
+    private static final char[][] FOLD_PAGES = new char[256][];
+
+    // Folded form of the punctuation and whitespaces
+    private static final char SEPARATOR = ' ';
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+            char lower = Character.toLowerCase((char) c);
+
+            if (Bitap.Alphabet.contains(lower) && lower != '&') {
+                put(CLEAN_PAGES, c, lower);
+                put(FOLD_PAGES, c, foldChar(lower));
+            } else if (Character.isWhitespace(c) || lower == '&') {
+                put(FOLD_PAGES, c, SEPARATOR);
+            }
+        }
+    }
+
+    private static void put(char[][] pages, int c, char value) {
+        if (pages[c >>> 8] == null) {
+            pages[c >>> 8] = new char[256];
+        }
+        pages[c >>> 8][c & 0xFF] = value;
+    }
+
+    // Strip the diacritics of a cleaned character, map the punctuation to SEPARATOR
+    private static char foldChar(char c) {
+        if (c == 'đ') {
+            return 'd';
+        }
+
+        char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+        return Character.isLetterOrDigit(base) ? base : SEPARATOR;
+    }
+
+    // Combining diacritical marks, found in decomposed (NFD) strings
+    private static boolean isCombiningMark(char c) {
+        return c >= '\u0300' && c <= '\u036F';
+    }
+
     /**
      * Clean the input string
      * - Trim
      * - Convert to lower case
      * - Remove chars which aren't included in the Bitap alphabet
      *
+     * Decomposed diacritics are composed first (NFC), so that they aren't removed
+     *
      * @param str input string
      * @return cleaned string
      */
     public static String clean(String str) {
-        str = str.trim().toLowerCase();
+        return clean(str, false);
+    }
+
+    private static String clean(String str, boolean composed) {
+        // Same bounds as String.trim
+        int start = 0, end = str.length();
+        while (start < end && str.charAt(start) <= ' ') {
+            ++start;
+        }
+        while (start < end && str.charAt(end - 1) <= ' ') {
+            --end;
+        }
+
+        char[] cleaned = new char[end - start];
+        int length = 0;
+        for (int i = start; i < end; ++i) {
+            char currentChar = str.charAt(i);
+            char[] page = CLEAN_PAGES[currentChar >>> 8];
+            char cleanedChar = page == null ? 0 : page[currentChar & 0xFF];
+
+            if (cleanedChar != 0) {
+                cleaned[length++] = cleanedChar;
+            } else if (!composed && isCombiningMark(currentChar)) {
+                return clean(Normalizer.normalize(str, Normalizer.Form.NFC), true);
+            }
+        }
+
+        return new String(cleaned, 0, length);
+    }
+
+    /**
+     * Clean the input string, and normalize it to a small alphabet
+     * - Convert to lower case
+     * - Strip the Vietnamese diacritics, e.g. "đường" becomes "duong"
+     * - Replace each run of whitespaces and punctuation by a single space, and trim
+     * - Remove chars which aren't included in the Bitap alphabet
+     *
+     * Only lower case ASCII letters, digits and spaces remain
+     * Typos on diacritics don't count as errors anymore when matching folded strings
+     *
+     * @param str input string
+     * @return folded string
+     */
+    public static String fold(String str) {
+        char[] folded = new char[str.length()];
+        int length = 0;
+        boolean pendingSeparator = false;
 
-        StringBuilder builder = new StringBuilder("");
         for (int i = 0; i < str.length(); ++i) {
             char currentChar = str.charAt(i);
+            char[] page = FOLD_PAGES[currentChar >>> 8];
+            char foldedChar = page == null ? 0 : page[currentChar & 0xFF];
 
-            if (Bitap.Alphabet.contains(currentChar) && currentChar != '&') {
-                builder.append(currentChar);
+            if (foldedChar == SEPARATOR) {
+                pendingSeparator = length > 0;
+            } else if (foldedChar != 0) {
+                if (pendingSeparator) {
+                    folded[length++] = SEPARATOR;
+                    pendingSeparator = false;
+                }
+                folded[length++] = foldedChar;
             }
         }
 
-        return builder.toString();
+        return new String(folded, 0, length);
     }
 }
@@ -0,0 +1,113 @@
+package bitap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import util.RandomText;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Each engine against a Levenshtein search by dynamic programming
+ */
+@RunWith(Parameterized.class)
+public class BitapPatternTest {
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{Bitap.Engine.AUTO}, {Bitap.Engine.WU_MANBER}, {Bitap.Engine.MYERS}});
+    }
+
+    private final Bitap.Engine engine;
+
+    public BitapPatternTest(Bitap.Engine engine) {
+        this.engine = engine;
+    }
+    @Test
+    public void matchesLikeDynamicProgramming() {
+        RandomText random = new RandomText(13);
+        for (int round = 0; round < 3000; ++round) {
+            String pattern = random.text(1 + random.getRandom().nextInt(round % 3 == 0 ? 20 : 255));
+            int lev = random.getRandom().nextInt(pattern.length() / 8 + 2);
+            String text = random.getRandom().nextInt(4) == 0 ? random.text(random.getRandom().nextInt(400))
+                    : random.around(pattern, lev + 1, 150);
+
+            boolean expected = RandomText.distance(text, pattern) <= lev;
+            BitapPattern compiled = BitapPattern.compile(pattern, lev, engine);
+            assertEquals(pattern.length() + " " + lev, expected, compiled.matches(text));
+            assertEquals(expected, compiled.matches(new StringBuilder(text)));
+        }
+    }
+
+    @Test
+    public void findBestLikeDynamicProgramming() {
+        RandomText random = new RandomText(14);
+        for (int round = 0; round < 2000; ++round) {
+            String pattern = random.text(1 + random.getRandom().nextInt(round % 3 == 0 ? 20 : 255));
+            int lev = random.getRandom().nextInt(pattern.length() / 8 + 2);
+            String text = random.around(pattern, lev + 1, 100);
+
+            int distance = RandomText.distance(text, pattern);
+            BitapMatch best = BitapPattern.compile(pattern, lev, engine).findBest(text);
+            if (distance > lev) {
+                assertNull(best);
+                continue;
+            }
+            assertNotNull(best);
+            assertEquals(distance, best.getDistance());
+            assertEquals(distance, levenshtein(text.substring(best.getStart(), best.getEnd()), pattern));
+        }
+    }
+
+    @Test
+    public void exactOccurrences() {
+        BitapPattern pattern = BitapPattern.compile("đệ ab", 0, engine);
+        assertEquals(true, pattern.matches("cc đệ abh"));
+        assertEquals(false, pattern.matches("cc đe abh"));
+
+        BitapMatch best = pattern.findBest("cc đệ abh đệ ab");
+        assertEquals(3, best.getStart());
+        assertEquals(8, best.getEnd());
+        assertEquals(0, best.getDistance());
+    }
+
+    @Test
+    public void moreErrorsThanCharacters() {
+        BitapPattern pattern = BitapPattern.compile("abc", 3, engine);
+        assertEquals(true, pattern.matches(""));
+        assertEquals(3, pattern.findBest("").getDistance());
+        assertEquals(0, pattern.findBest("h abc").getDistance());
+    }
+
+    @Test
+    public void longPatternsAreTruncated() {
+        RandomText random = new RandomText(15);
+        String pattern = random.text(300);
+        BitapPattern compiled = BitapPattern.compile(pattern, 2, engine);
+        assertEquals(255, compiled.getPattern().length());
+        assertEquals(true, compiled.matches(random.text(40) + pattern.substring(0, 255)));
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); ++j) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); ++i) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); ++j) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,66 @@
+package bitap;
+
+import org.junit.Test;
+import util.RandomText;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MultiBitap against BitapPattern.matches on each pattern
+ */
+public class MultiBitapTest {
+    @Test
+    public void matchesLikeEachPattern() {
+        RandomText random = new RandomText(15);
+        for (int round = 0; round < 200; ++round) {
+            // Up to several blocks of words
+            int n = 1 + random.getRandom().nextInt(round % 10 == 0 ? 3000 : 60);
+            List<BitapPattern> patterns = new ArrayList<>();
+            for (int i = 0; i < n; ++i) {
+                int m = 1 + random.getRandom().nextInt(random.getRandom().nextBoolean() ? 20 : 90);
+                int lev = random.getRandom().nextInt(3) == 0 ? random.getRandom().nextInt(m + 2) : m / 10;
+                patterns.add(BitapPattern.compile(random.text(m), lev));
+            }
+            MultiBitap multiBitap = MultiBitap.compile(patterns);
+            assertEquals(n, multiBitap.size());
+
+            for (int t = 0; t < 10; ++t) {
+                BitapPattern source = patterns.get(random.getRandom().nextInt(n));
+                String text = random.around(source.getPattern(), source.getLev() + 1, 80);
+                BitSet matched = new BitSet();
+                matched.set(n);
+                multiBitap.matchAll(text, matched);
+
+                assertTrue(matched.get(n));
+                for (int i = 0; i < n; ++i) {
+                    BitapPattern pattern = patterns.get(i);
+                    assertEquals(pattern.getPattern().length() + " " + pattern.getLev(), pattern.matches(text), matched.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void noPatterns() {
+        MultiBitap multiBitap = MultiBitap.compile(new ArrayList<>());
+        BitSet matched = new BitSet();
+        multiBitap.matchAll("abc", matched);
+        assertEquals(0, multiBitap.size());
+        assertTrue(matched.isEmpty());
+    }
+
+    @Test
+    public void emptyText() {
+        List<BitapPattern> patterns = new ArrayList<>();
+        patterns.add(BitapPattern.compile("abc", 1));
+        patterns.add(BitapPattern.compile("ab", 2));
+        BitSet matched = new BitSet();
+        MultiBitap.compile(patterns).matchAll("", matched);
+        assertEquals(BitSet.valueOf(new long[]{2}), matched);
+    }
+}
@@ -0,0 +1,87 @@
+package data;
+
+import bitap.BitapPattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.RandomText;
+import util.StringUtl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CorpusStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        RandomText random = new RandomText(12);
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            StringBuilder reference = new StringBuilder();
+            for (int e = random.getRandom().nextInt(4); e > 0; --e) {
+                if (reference.length() > 0) {
+                    reference.append(References.ENTRY_SEPARATOR);
+                }
+                reference.append(StringUtl.clean(random.text(1 + random.getRandom().nextInt(300)) + ", (2018)."));
+            }
+
+            Article article = new Article();
+            article.setId(3 * i + 1);
+            article.setTitle(StringUtl.clean(random.text(random.getRandom().nextInt(80))));
+            article.setReferences(new References(reference.toString()));
+            articles.add(article);
+        }
+
+        File file = folder.newFile();
+        CorpusStore.write(file, new ArticleCorpus(articles));
+        try (CorpusStore store = CorpusStore.open(file)) {
+            assertEquals(articles.size(), store.size());
+            for (int i = 0; i < articles.size(); ++i) {
+                Article article = articles.get(i);
+                assertEquals(article.getId(), store.getId(i));
+                assertEquals(i, store.indexOf(article.getId()));
+                assertTrue(store.indexOf(article.getId() + 1) < 0);
+                assertEquals(article.getTitle(), store.getTitle(i).toString());
+                assertEquals(article.getReferences().getRaw(), store.getReference(i).toString());
+
+                // Read in place, the matches are the same
+                CharSequence reference = store.getReference(i);
+                if (reference.length() > 10) {
+                    assertEquals(reference.subSequence(3, 10).toString(), article.getReferences().getRaw().substring(3, 10));
+                }
+                if (article.getTitle().length() > 0) {
+                    BitapPattern title = BitapPattern.compile(articles.get((i * 7) % articles.size()).getTitle(), 8);
+                    assertEquals(title.matches(article.getReferences().getRaw()), title.matches(reference));
+                }
+            }
+            assertTrue(store.indexOf(0) < 0);
+        }
+    }
+
+    @Test
+    public void emptyCorpus() throws IOException {
+        File file = folder.newFile();
+        CorpusStore.write(file, new ArticleCorpus(new ArrayList<>()));
+        try (CorpusStore store = CorpusStore.open(file)) {
+            assertEquals(0, store.size());
+            assertTrue(store.indexOf(1) < 0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[64]);
+        }
+        CorpusStore.open(file).close();
+    }
+}
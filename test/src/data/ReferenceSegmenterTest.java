@@ -0,0 +1,71 @@
+package data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReferenceSegmenterTest {
+    @Test
+    public void bracketNumbers() {
+        assertEquals(Arrays.asList("[1] Smith, J. A first work. 2010.", "[2] Nguyen Van An. A second work. 2015."),
+                ReferenceSegmenter.split("[1] Smith, J. A first work. 2010. [2] Nguyen Van An. A second work. 2015."));
+    }
+
+    @Test
+    public void textBeforeTheFirstMarker() {
+        assertEquals(Arrays.asList("References:", "[1] First work.", "[2] Second work."),
+                ReferenceSegmenter.split("References: [1] First work. [2] Second work."));
+    }
+
+    @Test
+    public void lineNumbersWithWrappedLines() {
+        String raw = "1. Smith, J. A first work on the matching\n   of titles. 2010.\n"
+                + "2) Nguyen Van An. A second work,\nwrapped twice,\nin 2015.\n";
+        assertEquals(Arrays.asList("1. Smith, J. A first work on the matching\n   of titles. 2010.",
+                "2) Nguyen Van An. A second work,\nwrapped twice,\nin 2015."), ReferenceSegmenter.split(raw));
+    }
+
+    @Test
+    public void oneEntryPerLineWithWrappedLines() {
+        String raw = "Smith, J. A first work on the\nmatching of titles. 2010.\n\n"
+                + "Nguyen Van An. A second work, Journal of Hyphen-\nation, 2015.\r\n"
+                + "Tran Thi B. A third work:\nSubtitle. 2018.";
+        assertEquals(Arrays.asList("Smith, J. A first work on the matching of titles. 2010.",
+                "Nguyen Van An. A second work, Journal of Hyphen-ation, 2015.",
+                "Tran Thi B. A third work: Subtitle. 2018."), ReferenceSegmenter.split(raw));
+    }
+
+    @Test
+    public void authorYearOnOneLine() {
+        String raw = "Smith, J. (2010). A first work. Journal. Nguyen Van An (2015). A second work. "
+                + "Brown, Alice, 2018a. A third work.";
+        assertEquals(Arrays.asList("Smith, J. (2010). A first work. Journal.", "Nguyen Van An (2015). A second work.",
+                "Brown, Alice, 2018a. A third work."), ReferenceSegmenter.split(raw));
+    }
+
+    @Test
+    public void numbersInsideAnEntryDontSplit() {
+        // Out of sequence markers, volumes, pages and years
+        assertEquals(Arrays.asList("[1] A work citing [5] and [7], vol. 3, pp. 12-15, 2010.", "[2] Another work."),
+                ReferenceSegmenter.split("[1] A work citing [5] and [7], vol. 3, pp. 12-15, 2010. [2] Another work."));
+
+        String raw = "1. A work, vol. 3. pp. 12-15,\n4. printing, 2010.\n2. Another work.";
+        assertEquals(Arrays.asList("1. A work, vol. 3. pp. 12-15,\n4. printing, 2010.", "2. Another work."),
+                ReferenceSegmenter.split(raw));
+
+        assertEquals(Collections.singletonList("A study of the 2010 census. Results for 2011 and 2012."),
+                ReferenceSegmenter.split("A study of the 2010 census. Results for 2011 and 2012."));
+    }
+
+    @Test
+    public void unsegmentableBlob() {
+        String raw = "  some raw text without any structure, numbers like 12 or [3], no years  ";
+        assertEquals(Collections.singletonList(raw.trim()), ReferenceSegmenter.split(raw));
+        assertEquals(Collections.singletonList("[1] A single numbered entry."),
+                ReferenceSegmenter.split("[1] A single numbered entry."));
+        assertEquals(Collections.emptyList(), ReferenceSegmenter.split(" \n\t"));
+    }
+}
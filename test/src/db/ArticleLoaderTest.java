@@ -0,0 +1,112 @@
+package db;
+
+import bitap.BitapPattern;
+import data.Article;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import util.StringUtl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ArticleLoader against an in-memory H2 database
+ */
+public class ArticleLoaderTest {
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE articles (id INT PRIMARY KEY, title VARCHAR(1000), reference VARCHAR(10000))");
+        }
+
+        // Inserted out of order, some without references
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO articles VALUES (?, ?, ?)")) {
+            for (int i = 0; i < 25; ++i) {
+                int id = (i * 7) % 25 + 1;
+                insert.setInt(1, id);
+                insert.setString(2, "Title  of the article " + id + ".");
+                insert.setString(3, id % 5 == 0 ? (id % 10 == 0 ? null : "")
+                        : "[1] First cited work " + id + ". [2] Second cited work " + (id + 1) + ".");
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void loadsInOrderAcrossPages() throws SQLException {
+        ArticleLoader loader = new ArticleLoader(connection);
+        loader.setPageSize(4);
+        loader.setNumOfCleaners(2);
+        List<Article> articles = new ArrayList<>();
+        List<BitapPattern> titlePatterns = new ArrayList<>();
+        loader.load(articles, titlePatterns);
+
+        assertEquals(25, loader.getNumOfRows());
+        assertEquals(25, loader.getLastId());
+        assertEquals(20, articles.size());
+        assertEquals(articles.size(), titlePatterns.size());
+
+        int previousId = 0;
+        for (int i = 0; i < articles.size(); ++i) {
+            Article article = articles.get(i);
+            assertTrue(article.getId() > previousId);
+            assertTrue(article.getId() % 5 != 0);
+            previousId = article.getId();
+
+            String title = StringUtl.clean("Title  of the article " + article.getId() + ".");
+            assertEquals(title, article.getTitle());
+            assertEquals(title, titlePatterns.get(i).getPattern());
+            assertEquals(title.length() / 10, titlePatterns.get(i).getLev());
+            assertEquals(2, article.getReferences().getEntries().size());
+        }
+    }
+
+    @Test
+    public void loadsAfterIdUpToLimit() throws SQLException {
+        ArticleLoader loader = new ArticleLoader(connection);
+        loader.setPageSize(3);
+        loader.setAfterId(10);
+        loader.setLimit(8);
+        List<Article> articles = new ArrayList<>();
+        loader.load(articles, new ArrayList<>());
+
+        assertEquals(8, loader.getNumOfRows());
+        assertEquals(18, loader.getLastId());
+        assertEquals(11, articles.get(0).getId());
+        assertEquals(18, articles.get(articles.size() - 1).getId());
+        assertEquals(7, articles.size());
+    }
+
+    @Test
+    public void emptyTable() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM articles");
+        }
+
+        ArticleLoader loader = new ArticleLoader(connection);
+        loader.setAfterId(42);
+        List<Article> articles = new ArrayList<>();
+        loader.load(articles, new ArrayList<>());
+
+        assertEquals(0, loader.getNumOfRows());
+        assertEquals(42, loader.getLastId());
+        assertTrue(articles.isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+package db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * LinkWriter against an in-memory H2 database
+ */
+public class LinkWriterTest {
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void writesAllLinks() throws SQLException {
+        LinkWriter writer = new LinkWriter(connection, 4);
+        writer.setBatchSize(7);
+        writer.setBatchesPerTransaction(3);
+        writer.createTable();
+        writer.start();
+
+        List<String> expected = new ArrayList<>();
+        for (int citing = 1; citing <= 100; ++citing) {
+            int[] cited = new int[citing % 4];
+            for (int c = 0; c < cited.length; ++c) {
+                cited[c] = 1000 + citing * 4 + c;
+                expected.add(citing + " " + cited[c]);
+            }
+            writer.add(citing, cited);
+        }
+        writer.close();
+
+        assertEquals(expected.size(), writer.getNumOfLinks());
+        assertEquals(expected, links());
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    public void clearAndDeleteAfter() throws SQLException {
+        LinkWriter writer = new LinkWriter(connection);
+        writer.createTable();
+        writer.start();
+        writer.add(1, new int[]{2, 5});
+        writer.add(3, new int[]{1});
+        writer.add(6, new int[]{1, 2});
+        writer.close();
+
+        // Created once
+        writer.createTable();
+
+        writer.deleteAfter(3);
+        List<String> expected = new ArrayList<>();
+        expected.add("1 2");
+        expected.add("3 1");
+        assertEquals(expected, links());
+
+        writer.clear();
+        assertTrue(links().isEmpty());
+    }
+
+    @Test
+    public void failureIsThrownByClose() throws SQLException {
+        // No table, every insert fails
+        LinkWriter writer = new LinkWriter(connection, 2);
+        writer.setBatchSize(1);
+        writer.start();
+        for (int citing = 1; citing <= 50; ++citing) {
+            writer.add(citing, new int[]{citing + 1});
+        }
+
+        try {
+            writer.close();
+            fail("The failed write wasn't reported");
+        } catch (SQLException expected) {
+            // Reported once the links are discarded
+        }
+    }
+
+    private List<String> links() throws SQLException {
+        List<String> links = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT citing_id, cited_id FROM article_links ORDER BY citing_id, cited_id")) {
+            while (rows.next()) {
+                links.add(rows.getInt(1) + " " + rows.getInt(2));
+            }
+        }
+        return links;
+    }
+}
@@ -0,0 +1,43 @@
+package db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Watermark against an in-memory H2 database
+ */
+public class WatermarkTest {
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void roundTrip() throws SQLException {
+        Watermark watermark = new Watermark(connection);
+        watermark.createTable();
+        assertEquals(Watermark.NONE, watermark.read());
+
+        watermark.write(17);
+        assertEquals(17, watermark.read());
+
+        // Updated in place, and kept by a new instance
+        watermark.write(42);
+        watermark.createTable();
+        assertEquals(42, new Watermark(connection).read());
+    }
+}
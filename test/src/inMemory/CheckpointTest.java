@@ -0,0 +1,203 @@
+package inMemory;
+
+import data.Article;
+import data.ArticleCorpus;
+import data.Corpus;
+import data.References;
+import db.LinkSink;
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class CheckpointTest {
+    private static final long JOB = 42;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumeReplaysTheChunks() throws Exception {
+        File file = folder.newFile();
+        List<String> expectedLinks = new ArrayList<>();
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            // From several threads, in any order
+            ExecutorService threads = Executors.newFixedThreadPool(4);
+            List<Future<?>> done = new ArrayList<>();
+            for (int chunk = 0; chunk < 40; ++chunk) {
+                int start = chunk * 16;
+                done.add(threads.submit(() -> {
+                    add(checkpoint, start);
+                    return null;
+                }));
+                expectedLinks.add(start + " " + Arrays.toString(new int[]{start + 1, start + 2}));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+            threads.shutdown();
+        }
+
+        ResultWriter resultWriter = resultWriter("replayed");
+        Links links = new Links();
+        Checkpoint checkpoint = new Checkpoint(file, JOB);
+        assertEquals(40, checkpoint.resume(resultWriter, links));
+        resultWriter.close();
+
+        StringBuilder report = new StringBuilder();
+        StringBuilder table = new StringBuilder(ResultWriter.TABLE_HEADER);
+        for (int chunk = 0; chunk < 40; ++chunk) {
+            int start = chunk * 16;
+            report.append(report(start));
+            table.append(table(start));
+
+            MatchResult result = checkpoint.getDone(start, start + 16, 0);
+            assertEquals(start, result.getMatchCounter());
+            assertEquals(1, result.getArticlesHaveMatch());
+            assertNull(checkpoint.getDone(start, start + 8, 0));
+            assertNull(checkpoint.getDone(start, start + 16, 1));
+        }
+        assertEquals(report.toString(), read("replayed.txt"));
+        assertEquals(table.toString(), read("replayed.tsv"));
+        Collections.sort(expectedLinks);
+        Collections.sort(links.lines);
+        assertEquals(expectedLinks, links.lines);
+
+        checkpoint.delete();
+        assertEquals(false, file.exists());
+    }
+
+    @Test
+    public void tornRecordIsCutOff() throws IOException {
+        File file = folder.newFile();
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            add(checkpoint, 0);
+            add(checkpoint, 16);
+        }
+        long length = file.length();
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            output.write(new byte[]{0, 0, 1, 0, 5, 5, 5, 5, 1, 2, 3});
+        }
+
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            assertEquals(2, checkpoint.resume(resultWriter("first"), new Links()));
+            assertEquals(length, file.length());
+
+            // Appended after the cut
+            add(checkpoint, 32);
+        }
+
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            assertEquals(3, checkpoint.resume(resultWriter("second"), new Links()));
+        }
+    }
+
+    @Test
+    public void corruptedRecordEndsTheReplay() throws IOException {
+        File file = folder.newFile();
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            add(checkpoint, 0);
+        }
+        long length = file.length();
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            checkpoint.resume(resultWriter("first"), new Links());
+            add(checkpoint, 16);
+        }
+
+        // Flip a byte of the second record
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[(int) length + 20] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            assertEquals(1, checkpoint.resume(resultWriter("second"), new Links()));
+            assertEquals(length, file.length());
+        }
+    }
+
+    @Test
+    public void otherJobIsDiscarded() throws IOException {
+        File file = folder.newFile();
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB)) {
+            add(checkpoint, 0);
+        }
+
+        try (Checkpoint checkpoint = new Checkpoint(file, JOB + 1)) {
+            assertEquals(0, checkpoint.resume(resultWriter("other"), new Links()));
+            assertNull(checkpoint.getDone(0, 16, 0));
+        }
+    }
+
+    @Test
+    public void jobKeyChangesWithTheJob() {
+        Corpus corpus = corpus("a reference");
+        long key = Checkpoint.jobKey(corpus, 1, 0, false);
+        assertEquals(key, Checkpoint.jobKey(corpus("a reference"), 1, 0, false));
+        assertNotEquals(key, Checkpoint.jobKey(corpus("a references"), 1, 0, false));
+        assertNotEquals(key, Checkpoint.jobKey(corpus, 2, 0, false));
+        assertNotEquals(key, Checkpoint.jobKey(corpus, 1, 1, false));
+        assertNotEquals(key, Checkpoint.jobKey(corpus, 1, 0, true));
+    }
+
+    private static void add(Checkpoint checkpoint, int start) throws IOException {
+        TIntArrayList links = new TIntArrayList(new int[]{start, 2, start + 1, start + 2});
+        checkpoint.add(start, start + 16, 0, new MatchResult(start, 1), report(start), table(start), links);
+    }
+
+    private static String report(int start) {
+        return "Article " + start + ":\n    [1] đường " + (start + 1) + "\n\n";
+    }
+
+    private static String table(int start) {
+        return start + "\t" + (start + 1) + "\t1\t0\n" + start + "\t" + (start + 2) + "\t1\t2\n";
+    }
+
+    private ResultWriter resultWriter(String name) {
+        ResultWriter resultWriter = new ResultWriter(new File(folder.getRoot(), name + ".txt"),
+                new File(folder.getRoot(), name + ".tsv"));
+        resultWriter.setTableHeader(ResultWriter.TABLE_HEADER);
+        return resultWriter;
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File(folder.getRoot(), name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static Corpus corpus(String reference) {
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            Article article = new Article();
+            article.setId(i + 1);
+            article.setTitle("title " + i);
+            article.setReferences(new References(reference + " " + i));
+            articles.add(article);
+        }
+        return new ArticleCorpus(articles);
+    }
+
+    private static class Links implements LinkSink {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public synchronized void add(int citingId, int[] citedIds) {
+            lines.add(citingId + " " + Arrays.toString(citedIds));
+        }
+    }
+}
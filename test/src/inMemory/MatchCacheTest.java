@@ -0,0 +1,121 @@
+package inMemory;
+
+import bitap.BitapPattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.RandomText;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MatchCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        MatchCache cache = new MatchCache(2);
+        cache.put(MatchCache.key("a"), new int[]{1}, 3);
+        cache.put(MatchCache.key("b"), new int[]{2}, 3);
+        cache.get(MatchCache.key("a"));
+        cache.put(MatchCache.key("c"), new int[0], 3);
+
+        assertNull(cache.get(MatchCache.key("b")));
+        assertEquals(1, cache.get(MatchCache.key("a")).getTitles()[0]);
+        assertEquals(3, cache.get(MatchCache.key("c")).getNumOfTitles());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void reloadedForTheSameTitles() throws IOException {
+        RandomText random = new RandomText(16);
+        List<BitapPattern> titles = titles(random, 200);
+        List<String> texts = texts(random, titles);
+
+        File file = saved(new TitleMatcher(titles), texts);
+        TitleMatcher matcher = new TitleMatcher(titles);
+        MatchCache cache = new MatchCache(1000);
+        assertEquals(texts.size(), cache.load(file, matcher));
+        matcher.setCache(cache);
+
+        check(matcher, titles, texts);
+        assertEquals(texts.size(), cache.getHits());
+    }
+
+    @Test
+    public void reloadedWhenTitlesAreAppended() throws IOException {
+        RandomText random = new RandomText(17);
+        List<BitapPattern> titles = titles(random, 300);
+        List<String> texts = texts(random, titles);
+
+        File file = saved(new TitleMatcher(titles.subList(0, 200)), texts);
+        TitleMatcher matcher = new TitleMatcher(titles);
+        MatchCache cache = new MatchCache(1000);
+        assertEquals(texts.size(), cache.load(file, matcher));
+        matcher.setCache(cache);
+
+        // The appended titles are matched on the first hit, the entries then cover all of them
+        check(matcher, titles, texts);
+        check(matcher, titles, texts);
+        assertEquals(2 * texts.size(), cache.getHits());
+        assertEquals(titles.size(), cache.get(MatchCache.key(texts.get(0))).getNumOfTitles());
+    }
+
+    @Test
+    public void ignoredForOtherTitles() throws IOException {
+        RandomText random = new RandomText(18);
+        List<BitapPattern> titles = titles(random, 300);
+        List<String> texts = texts(random, titles);
+
+        File file = saved(new TitleMatcher(titles.subList(0, 200)), texts);
+        assertEquals(0, new MatchCache(1000).load(file, new TitleMatcher(titles.subList(1, 300))));
+        assertEquals(0, new MatchCache(1000).load(file, new TitleMatcher(titles.subList(0, 199))));
+        assertEquals(0, new MatchCache(1000).load(new File(folder.getRoot(), "missing"), new TitleMatcher(titles)));
+    }
+
+    private File saved(TitleMatcher matcher, List<String> texts) throws IOException {
+        matcher.setCache(new MatchCache(1000));
+        for (String text : texts) {
+            matcher.matchAll(text, new BitSet());
+        }
+        File file = folder.newFile();
+        matcher.getCache().save(file, matcher);
+        return file;
+    }
+
+    private static void check(TitleMatcher matcher, List<BitapPattern> titles, List<String> texts) {
+        for (String text : texts) {
+            BitSet matched = new BitSet();
+            matcher.matchAll(text, matched);
+            for (int i = 0; i < titles.size(); ++i) {
+                assertEquals(titles.get(i).matches(text), matched.get(i));
+            }
+        }
+    }
+
+    private static List<BitapPattern> titles(RandomText random, int n) {
+        List<BitapPattern> titles = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            String title = random.text(3 + random.getRandom().nextInt(80));
+            titles.add(BitapPattern.compile(title, title.length() / 10));
+        }
+        return titles;
+    }
+
+    // Texts citing titles from everywhere in the list, the appended ones too
+    private static List<String> texts(RandomText random, List<BitapPattern> titles) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 60; ++i) {
+            BitapPattern title = titles.get(i * titles.size() / 60);
+            texts.add(random.around(title.getPattern(), title.getLev(), 200));
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,120 @@
+package inMemory;
+
+import bitap.BitapPattern;
+import org.junit.Test;
+import util.RandomText;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TitleMatcher against matching every title with its BitapPattern
+ */
+public class TitleMatcherTest {
+    @Test
+    public void matchesLikeBruteForce() {
+        RandomText random = new RandomText(18);
+        for (int round = 0; round < 200; ++round) {
+            List<BitapPattern> titles = titles(random, false);
+            check(random, new TitleMatcher(titles), titles);
+        }
+    }
+
+    @Test
+    public void duplicatedTitles() {
+        RandomText random = new RandomText(24);
+        int duplicates = 0;
+        for (int round = 0; round < 200; ++round) {
+            List<BitapPattern> titles = titles(random, true);
+            TitleMatcher matcher = new TitleMatcher(titles);
+            duplicates += titles.size() - matcher.numOfDistinct();
+            check(random, matcher, titles);
+        }
+        assertTrue(duplicates > 0);
+    }
+
+    @Test
+    public void cachedLikeBruteForce() {
+        RandomText random = new RandomText(16);
+        List<BitapPattern> titles = titles(random, true);
+        TitleMatcher matcher = new TitleMatcher(titles);
+        matcher.setCache(new MatchCache(100));
+        // The same texts, twice
+        for (int round = 0; round < 4; ++round) {
+            check(new RandomText(round % 2), matcher, titles);
+        }
+        assertTrue(matcher.getCache().getHits() > 0);
+    }
+
+    @Test
+    public void statsCountThePairs() {
+        RandomText random = new RandomText(20);
+        List<BitapPattern> titles = titles(random, true);
+        TitleMatcher matcher = new TitleMatcher(titles);
+        FilterStats stats = new FilterStats();
+        matcher.setStats(stats);
+        check(random, matcher, titles);
+
+        // Each pair is counted once, by the step which answered it
+        assertEquals(20L * titles.size(), stats.getPairs());
+        assertEquals(stats.getPairs(), stats.getDuplicates() + stats.getAnchorRejected() + stats.getLengthRejected()
+                + stats.getSignatureRejected() + stats.getHistogramRejected() + stats.getVerified() + stats.getPacked());
+    }
+
+    @Test
+    public void resolveOverlapsKeepsTheLongerTitle() {
+        List<BitapPattern> titles = new ArrayList<>();
+        titles.add(BitapPattern.compile("fuzzy matching of titles", 2));
+        titles.add(BitapPattern.compile("matching", 0));
+        titles.add(BitapPattern.compile("references", 1));
+        TitleMatcher matcher = new TitleMatcher(titles);
+
+        String text = "a fuzzy matching of titles in references";
+        BitSet matched = new BitSet();
+        matcher.matchAll(text, matched);
+        assertEquals(3, matched.cardinality());
+
+        matcher.resolveOverlaps(text, matched);
+        assertTrue(matched.get(0));
+        assertTrue(!matched.get(1));
+        assertTrue(matched.get(2));
+    }
+
+    /**
+     * Random titles, short and long, with the default or any maximum distance
+     *
+     * @param duplicated if set, some titles are repeated, as the same pattern or compiled again
+     */
+    private static List<BitapPattern> titles(RandomText random, boolean duplicated) {
+        List<BitapPattern> titles = new ArrayList<>();
+        int n = 1 + random.getRandom().nextInt(80);
+        for (int i = 0; i < n; ++i) {
+            int m = 1 + random.getRandom().nextInt(random.getRandom().nextBoolean() ? 20 : 300);
+            int lev = random.getRandom().nextInt(4) == 0 ? random.getRandom().nextInt(m + 2) : m / 10;
+            titles.add(BitapPattern.compile(random.text(m), lev));
+            while (duplicated && random.getRandom().nextInt(3) == 0) {
+                BitapPattern title = titles.get(random.getRandom().nextInt(titles.size()));
+                titles.add(random.getRandom().nextBoolean() ? title : BitapPattern.compile(title.getPattern(), title.getLev()));
+            }
+        }
+        return titles;
+    }
+
+    private static void check(RandomText random, TitleMatcher matcher, List<BitapPattern> titles) {
+        for (int t = 0; t < 20; ++t) {
+            BitapPattern source = titles.get(random.getRandom().nextInt(titles.size()));
+            String text = random.around(source.getPattern(), source.getLev() + 1, 80);
+            BitSet matched = new BitSet();
+            matcher.matchAll(text, matched);
+
+            for (int i = 0; i < titles.size(); ++i) {
+                BitapPattern title = titles.get(i);
+                assertEquals(title.getPattern().length() + " " + title.getLev(), title.matches(text), matched.get(i));
+            }
+        }
+    }
+}
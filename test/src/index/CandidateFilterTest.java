@@ -0,0 +1,67 @@
+package index;
+
+import bitap.BitapPattern;
+import org.junit.Test;
+import util.RandomText;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CandidateFilterTest {
+    @Test
+    public void neverRejectsAContainedPattern() {
+        RandomText random = new RandomText(18);
+        int rejected = 0;
+        for (int round = 0; round < 100; ++round) {
+            List<BitapPattern> patterns = new ArrayList<>();
+            int n = 1 + random.getRandom().nextInt(50);
+            for (int i = 0; i < n; ++i) {
+                String pattern = random.text(1 + random.getRandom().nextInt(150));
+                patterns.add(BitapPattern.compile(pattern, random.getRandom().nextInt(pattern.length() / 8 + 2)));
+            }
+            CandidateFilter filter = new CandidateFilter(patterns);
+
+            for (int t = 0; t < 20; ++t) {
+                BitapPattern source = patterns.get(random.getRandom().nextInt(n));
+                String text = random.around(source.getPattern(), source.getLev() + 2, 40);
+                CandidateFilter.Profile profile = filter.profile(text);
+
+                for (int i = 0; i < n; ++i) {
+                    boolean fails = filter.failsLength(i, profile) || filter.failsSignature(i, profile)
+                            || filter.failsHistogram(i, profile);
+                    if (patterns.get(i).matches(text)) {
+                        assertFalse(patterns.get(i).getPattern() + " in " + text, fails);
+                    } else if (fails) {
+                        ++rejected;
+                    }
+                }
+            }
+        }
+        assertTrue(rejected > 0);
+    }
+
+    @Test
+    public void rejections() {
+        List<BitapPattern> patterns = new ArrayList<>();
+        patterns.add(BitapPattern.compile("abcdefgh", 1));
+        CandidateFilter filter = new CandidateFilter(patterns);
+
+        assertTrue(filter.failsLength(0, filter.profile("abcdef")));
+        assertFalse(filter.failsLength(0, filter.profile("abcdefg")));
+
+        // Two characters of the pattern are missing
+        assertTrue(filter.failsSignature(0, filter.profile("abcdefaa")));
+        assertFalse(filter.failsSignature(0, filter.profile("abcdefga")));
+
+        // All the characters are there, but not as many times
+        patterns.add(BitapPattern.compile("aaaabbbb", 1));
+        filter = new CandidateFilter(patterns);
+        CandidateFilter.Profile text = filter.profile("abababhh");
+        assertFalse(filter.failsSignature(1, text));
+        assertTrue(filter.failsHistogram(1, text));
+        assertFalse(filter.failsHistogram(1, filter.profile("aaababbb")));
+    }
+}
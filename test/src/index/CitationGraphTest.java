@@ -0,0 +1,202 @@
+package index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CitationGraphTest {
+    // More articles and links than an IO block, so that write and read go across the blocks
+    private static final int NUM_OF_ARTICLES = 150000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildsForwardAndReverseRows() throws Exception {
+        Random random = new Random(22);
+        int[] ids = ids(random, NUM_OF_ARTICLES);
+        List<TreeSet<Integer>> cited = links(random, ids.length);
+        CitationGraph graph = build(ids, cited);
+
+        check(ids, cited, graph);
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        Random random = new Random(23);
+        int[] ids = ids(random, NUM_OF_ARTICLES);
+        List<TreeSet<Integer>> cited = links(random, ids.length);
+        File file = folder.newFile();
+        build(ids, cited).write(file);
+
+        check(ids, cited, CitationGraph.read(file));
+    }
+
+    @Test
+    public void emptyGraph() throws IOException {
+        File file = folder.newFile();
+        new CitationGraph.Builder(new int[0]).build().write(file);
+        CitationGraph graph = CitationGraph.read(file);
+        assertEquals(0, graph.numOfArticles());
+        assertEquals(0, graph.numOfLinks());
+        assertTrue(graph.indexOf(1) < 0);
+    }
+
+    @Test
+    public void unknownIds() {
+        CitationGraph.Builder builder = new CitationGraph.Builder(new int[]{2, 4, 6});
+        builder.add(2, new int[]{6});
+        builder.add(3, new int[0]);
+        try {
+            builder.add(4, new int[]{5});
+            throw new AssertionError("An unknown id was accepted");
+        } catch (IllegalArgumentException expected) {
+            // The link isn't added
+        }
+
+        CitationGraph graph = builder.build();
+        assertEquals(1, graph.numOfLinks());
+        assertTrue(graph.indexOf(5) < 0);
+        assertTrue(graph.indexOf(7) < 0);
+        assertEquals(2, graph.indexOf(6));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(64);
+        }
+        CitationGraph.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws Exception {
+        Random random = new Random(24);
+        int[] ids = ids(random, 1000);
+        File file = folder.newFile();
+        build(ids, links(random, ids.length)).write(file);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(file.length() - 4);
+        }
+        CitationGraph.read(file);
+    }
+
+    @Test
+    public void addAllKeepsTheLinksUpToLastId() {
+        CitationGraph.Builder previous = new CitationGraph.Builder(new int[]{1, 2, 3, 4});
+        previous.add(1, new int[]{2, 3, 4});
+        previous.add(2, new int[]{1});
+        previous.add(3, new int[]{1});
+        previous.add(4, new int[]{1});
+
+        // 2 was deleted, 5 is new
+        CitationGraph.Builder builder = new CitationGraph.Builder(new int[]{1, 3, 4, 5});
+        builder.addAll(previous.build(), 3);
+        builder.add(5, new int[]{1});
+        CitationGraph graph = builder.build();
+
+        assertEquals(3, graph.numOfLinks());
+        assertEquals(1, graph.numOfCited(0));
+        assertEquals(3, graph.getId(graph.getCited(0, 0)));
+        assertEquals(0, graph.getCited(1, 0));
+        assertEquals(0, graph.numOfCited(2));
+        assertEquals(0, graph.getCited(3, 0));
+        assertEquals(2, graph.numOfCiting(0));
+    }
+
+    private static int[] ids(Random random, int n) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; ++i) {
+            ids[i] = (i == 0 ? 0 : ids[i - 1]) + 1 + random.nextInt(3);
+        }
+        return ids;
+    }
+
+    // The cited articles of each article, by index
+    private static List<TreeSet<Integer>> links(Random random, int n) {
+        List<TreeSet<Integer>> cited = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            TreeSet<Integer> targets = new TreeSet<>();
+            for (int k = random.nextInt(5); k > 0; --k) {
+                targets.add(random.nextInt(n));
+            }
+            cited.add(targets);
+        }
+        return cited;
+    }
+
+    // The links of an article are added in two parts, from different threads
+    private static CitationGraph build(int[] ids, List<TreeSet<Integer>> cited) throws Exception {
+        CitationGraph.Builder builder = new CitationGraph.Builder(ids);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            int part = t;
+            done.add(threads.submit(() -> {
+                for (int i = part / 2; i < ids.length; i += 4) {
+                    int[] targets = cited.get(i).stream().mapToInt(target -> ids[target]).toArray();
+                    int half = targets.length / 2;
+                    int from = part % 2 == 0 ? 0 : half;
+                    int to = part % 2 == 0 ? half : targets.length;
+                    int[] citedIds = new int[to - from];
+                    System.arraycopy(targets, from, citedIds, 0, citedIds.length);
+                    builder.add(ids[i], citedIds);
+                }
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        threads.shutdown();
+        return builder.build();
+    }
+
+    private static void check(int[] ids, List<TreeSet<Integer>> cited, CitationGraph graph) {
+        assertEquals(ids.length, graph.numOfArticles());
+        List<List<Integer>> citing = new ArrayList<>(ids.length);
+        int numOfLinks = 0;
+        for (int i = 0; i < ids.length; ++i) {
+            citing.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < ids.length; ++i) {
+            assertEquals(ids[i], graph.getId(i));
+            assertEquals(i, graph.indexOf(ids[i]));
+            if (ids[i] + 1 < (i + 1 < ids.length ? ids[i + 1] : Integer.MAX_VALUE)) {
+                assertTrue(graph.indexOf(ids[i] + 1) < 0);
+            }
+
+            assertEquals(cited.get(i).size(), graph.numOfCited(i));
+            int k = 0;
+            for (int target : cited.get(i)) {
+                assertEquals(target, graph.getCited(i, k++));
+                citing.get(target).add(i);
+            }
+            numOfLinks += k;
+        }
+        assertEquals(numOfLinks, graph.numOfLinks());
+
+        // Sources come in increasing order
+        for (int i = 0; i < ids.length; ++i) {
+            assertEquals(citing.get(i).size(), graph.numOfCiting(i));
+            for (int k = 0; k < citing.get(i).size(); ++k) {
+                assertEquals((int) citing.get(i).get(k), graph.getCiting(i, k));
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package index;
+
+import bitap.BitapPattern;
+import org.junit.Test;
+import util.RandomText;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QGramIndexTest {
+    @Test
+    public void noFalseNegatives() {
+        RandomText random = new RandomText(5);
+        for (int q = 1; q <= 7; q += 2) {
+            for (int round = 0; round < 50; ++round) {
+                List<BitapPattern> patterns = new ArrayList<>();
+                int n = 1 + random.getRandom().nextInt(60);
+                for (int i = 0; i < n; ++i) {
+                    String pattern = random.text(1 + random.getRandom().nextInt(120));
+                    patterns.add(BitapPattern.compile(pattern, random.getRandom().nextInt(pattern.length() / 8 + 2)));
+                }
+                QGramIndex index = new QGramIndex(patterns, q);
+
+                for (int t = 0; t < 20; ++t) {
+                    BitapPattern source = patterns.get(random.getRandom().nextInt(n));
+                    String text = random.around(source.getPattern(), source.getLev() + 1, 60);
+                    BitSet candidates = new BitSet();
+                    index.candidates(text, candidates);
+
+                    for (int i = 0; i < n; ++i) {
+                        if (!index.isIndexed(i)) {
+                            assertFalse(candidates.get(i));
+                        } else if (patterns.get(i).matches(text)) {
+                            assertTrue("q = " + q + ", pattern " + i, candidates.get(i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void indexesPatternsWithLongEnoughPieces() {
+        List<BitapPattern> patterns = new ArrayList<>();
+        patterns.add(BitapPattern.compile("abcdefghab", 1));
+        patterns.add(BitapPattern.compile("abcdefgh", 1));
+        patterns.add(BitapPattern.compile("abc", 0));
+        patterns.add(BitapPattern.compile("abcdefghabcdefgh", 5));
+        QGramIndex index = new QGramIndex(patterns, 5);
+
+        assertTrue(index.isIndexed(0));
+        assertFalse(index.isIndexed(1));
+        assertFalse(index.isIndexed(2));
+        assertFalse(index.isIndexed(3));
+        assertEquals(1, index.numOfIndexed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLongGrams() {
+        new QGramIndex(new ArrayList<>(), 8);
+    }
+}
@@ -0,0 +1,156 @@
+package index;
+
+import bitap.BitapPattern;
+import data.Article;
+import data.ArticleCorpus;
+import data.Corpus;
+import data.References;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.RandomText;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReferenceIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void suffixArrayIsSorted() {
+        Random random = new Random(25);
+        for (int round = 0; round < 300; ++round) {
+            // Two letters give long repeats, 200 give few
+            byte[] texts = new byte[random.nextInt(60)];
+            for (int i = 0; i < texts.length; ++i) {
+                texts[i] = (byte) random.nextInt(round % 2 == 0 ? 2 : 200);
+            }
+
+            Integer[] expected = new Integer[texts.length];
+            for (int i = 0; i < texts.length; ++i) {
+                expected[i] = i;
+            }
+            Arrays.sort(expected, (a, b) -> compareSuffixes(texts, a, b));
+
+            int[] suffixArray = ReferenceIndex.suffixArray(texts);
+            assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), suffixArray);
+        }
+    }
+
+    @Test
+    public void findsLikeScanningTheEntries() throws IOException {
+        RandomText random = new RandomText(25);
+        Corpus corpus = new ArticleCorpus(articles(random, 400));
+        int end = 300;
+        File file = folder.newFile();
+        ReferenceIndex.write(file, corpus, end);
+
+        try (ReferenceIndex index = ReferenceIndex.open(file)) {
+            assertEquals(end, index.size());
+            assertTrue(index.isValidFor(corpus));
+
+            int found = 0;
+            for (int t = 0; t < corpus.size(); ++t) {
+                String title = corpus.getTitle(t).toString();
+                int lev = t % 40 == 0 ? title.length() + 1 : title.length() / 10;
+                BitapPattern pattern = BitapPattern.compile(title, lev);
+
+                BitSet citing = new BitSet();
+                index.find(pattern, citing);
+                BitSet expected = new BitSet();
+                for (int i = 0; i < end; ++i) {
+                    for (CharSequence entry : References.entries(corpus.getReference(i))) {
+                        if (pattern.matches(entry)) {
+                            expected.set(i);
+                            break;
+                        }
+                    }
+                }
+                assertEquals(title, expected, citing);
+                found += citing.cardinality();
+            }
+            assertTrue(found > 0);
+        }
+    }
+
+    @Test
+    public void invalidForAnotherCorpus() throws IOException {
+        List<Article> articles = articles(new RandomText(26), 50);
+        File file = folder.newFile();
+        ReferenceIndex.write(file, new ArticleCorpus(articles), 40);
+
+        try (ReferenceIndex index = ReferenceIndex.open(file)) {
+            assertTrue(index.isValidFor(new ArticleCorpus(articles)));
+            assertFalse(index.isValidFor(new ArticleCorpus(articles.subList(0, 30))));
+
+            articles.get(5).setReferences(new References("another reference"));
+            assertFalse(index.isValidFor(new ArticleCorpus(articles)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[64]);
+        }
+        ReferenceIndex.open(file).close();
+    }
+
+    /**
+     * Articles whose references cite the titles of others, with a few errors
+     */
+    private static List<Article> articles(RandomText random, int n) {
+        List<String> titles = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            titles.add(random.text(5 + random.getRandom().nextInt(60)));
+        }
+
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            StringBuilder reference = new StringBuilder();
+            for (int e = random.getRandom().nextInt(5); e > 0; --e) {
+                if (reference.length() > 0) {
+                    reference.append(References.ENTRY_SEPARATOR);
+                }
+                String cited = titles.get(random.getRandom().nextInt(n));
+                reference.append(random.around(cited, cited.length() / 10, 40));
+            }
+
+            Article article = new Article();
+            article.setId(2 * i + 1);
+            article.setTitle(titles.get(i));
+            article.setReferences(new References(reference.toString()));
+            articles.add(article);
+        }
+        return articles;
+    }
+
+    // A suffix is smaller than the suffixes it starts
+    private static int compareSuffixes(byte[] texts, int a, int b) {
+        for (int k = 0; ; ++k) {
+            if (a + k == texts.length) {
+                return b + k == texts.length ? 0 : -1;
+            }
+            if (b + k == texts.length) {
+                return 1;
+            }
+            int difference = (texts[a + k] & 0xFF) - (texts[b + k] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package util;
+
+import java.util.Random;
+
+/**
+ * Random texts over a small alphabet, so that approximate occurrences are frequent, and a reference
+ * Levenshtein search to check the matchers against
+ */
+public class RandomText {
+    // Letters of the Bitap alphabet, Vietnamese ones included
+    public static final String ALPHABET = "abcdefgh ăđệ";
+
+    private final Random random;
+
+    public RandomText(long seed) {
+        random = new Random(seed);
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Apply random substitutions, deletions and insertions
+     *
+     * @param errors the number of edits, the result is at most this distance away
+     */
+    public String mutate(String str, int errors) {
+        StringBuilder mutated = new StringBuilder(str);
+        for (int e = 0; e < errors && mutated.length() > 1; ++e) {
+            int position = random.nextInt(mutated.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.setCharAt(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                    break;
+                case 1:
+                    mutated.deleteCharAt(position);
+                    break;
+                default:
+                    mutated.insert(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * A text holding an approximate occurrence of the pattern, with up to maxErrors edits, between random texts
+     */
+    public String around(String pattern, int maxErrors, int maxPadding) {
+        return text(random.nextInt(maxPadding + 1)) + mutate(pattern, random.nextInt(maxErrors + 1))
+                + text(random.nextInt(maxPadding + 1));
+    }
+
+    /**
+     * Smallest Levenshtein distance between the pattern and a substring of the text, by dynamic programming
+     */
+    public static int distance(CharSequence text, CharSequence pattern) {
+        int m = pattern.length();
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; ++j) {
+            previous[j] = j;
+        }
+        int best = previous[m];
+        for (int i = 1; i <= text.length(); ++i) {
+            current[0] = 0;
+            for (int j = 1; j <= m; ++j) {
+                int substitution = previous[j - 1] + (text.charAt(i - 1) == pattern.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            best = Math.min(best, current[m]);
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return best;
+    }
+}
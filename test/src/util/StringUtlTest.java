@@ -0,0 +1,105 @@
+package util;
+
+import bitap.Bitap;
+import org.junit.Test;
+
+import java.text.Normalizer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StringUtlTest {
+    // Vietnamese, Greek, Cyrillic and CJK letters, punctuation, runs of whitespaces and control characters
+    private static final String CHARACTERS = "aAzZ09 ,.;:()[]&-'\"!?/đĐéÉệỆưỨàẬỹỸ αβΣσς жЖй 中文 \t\n\r\u000b  \u0000\u001f";
+
+    @Test
+    public void cleanLikeTheBaselineOnEachCharacter() {
+        for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+            if (isCombiningMark((char) c) || Character.isSurrogate((char) c)) {
+                continue;
+            }
+            String str = "x" + (char) c + "X";
+            assertEquals(Integer.toHexString(c), baselineClean(str), StringUtl.clean(str));
+        }
+    }
+
+    @Test
+    public void cleanLikeTheBaselineOnRandomStrings() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20000; ++round) {
+            String str = random(random, random.nextInt(60));
+            assertEquals(str, baselineClean(str), StringUtl.clean(str));
+        }
+    }
+
+    @Test
+    public void cleanComposesDecomposedStrings() {
+        Random random = new Random(12);
+        for (int round = 0; round < 5000; ++round) {
+            String str = random(random, 1 + random.nextInt(60));
+            String decomposed = Normalizer.normalize(str, Normalizer.Form.NFD);
+            assertEquals(str, baselineClean(Normalizer.normalize(decomposed, Normalizer.Form.NFC)),
+                    StringUtl.clean(decomposed));
+        }
+
+        // Decomposed Cyrillic goes through the same path, and is removed
+        assertEquals("vt nam", StringUtl.clean(Normalizer.normalize("Vйt Nam", Normalizer.Form.NFD)));
+        assertEquals("việt nam", StringUtl.clean(Normalizer.normalize(" Việt Nam ", Normalizer.Form.NFD)));
+    }
+
+    @Test
+    public void fold() {
+        assertEquals("e", StringUtl.fold("é"));
+        assertEquals("d", StringUtl.fold("đ"));
+        assertEquals("d", StringUtl.fold("Đ"));
+        assertEquals("duong viet nam", StringUtl.fold("  Đường --  Việt,Nam! "));
+        assertEquals("a b c", StringUtl.fold("a\t\n b&c"));
+        assertEquals("tieng viet 2019", StringUtl.fold("Tiếng Việt (2019)"));
+        assertEquals("", StringUtl.fold(" ,.; "));
+
+        // Letters outside of the alphabet are removed, without separating
+        assertEquals("ab", StringUtl.fold("aжb"));
+    }
+
+    @Test
+    public void foldIsCleanWithoutDiacriticsAndPunctuation() {
+        Random random = new Random(13);
+        for (int round = 0; round < 20000; ++round) {
+            String folded = StringUtl.fold(random(random, random.nextInt(60)));
+            for (int i = 0; i < folded.length(); ++i) {
+                char c = folded.charAt(i);
+                assertEquals(folded, true, (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                        || (c == ' ' && i > 0 && i < folded.length() - 1 && folded.charAt(i - 1) != ' '));
+            }
+            assertEquals(folded, StringUtl.fold(folded));
+        }
+    }
+
+    private static String random(Random random, int length) {
+        StringBuilder str = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            str.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+        return str.toString();
+    }
+
+    private static boolean isCombiningMark(char c) {
+        return c >= '\u0300' && c <= '\u036F';
+    }
+
+    // StringUtl.clean before the tables
+    private static String baselineClean(String str) {
+        str = str.trim().toLowerCase();
+
+        StringBuilder builder = new StringBuilder("");
+        for (int i = 0; i < str.length(); ++i) {
+            char currentChar = str.charAt(i);
+
+            if (Bitap.Alphabet.contains(currentChar) && currentChar != '&') {
+                builder.append(currentChar);
+            }
+        }
+
+        return builder.toString();
+    }
+}